@@ -0,0 +1,4 @@
+call mvn -f ../pom.xml clean install
+call mvn clean package
+call java -jar target/benchmarks.jar -prof gc -rf json -rff target/result.json
+@pause
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.kaisen.common.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.XMemcachedClientBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kaisen.common.cache.embedded.EmbeddedMemcachedServer;
+import com.kaisen.common.xmemcached.transcoders.FastJsonTranscoder;
+
+/**
+ * Single and bulk reads and writes of BaseCache end to end,against an
+ * {@link EmbeddedMemcachedServer} on the loopback interface.Keys are picked
+ * at random among preloaded ones,so reads hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BaseCacheBenchmark {
+	private static final int KEY_COUNT = 10000;
+
+	@Param({ "100", "1000" })
+	private int valueSize;
+
+	@Param({ "20" })
+	private int batchSize;
+
+	private EmbeddedMemcachedServer server;
+	private MemcachedClient client;
+	private BenchmarkCache cache;
+	private BenchmarkItem value;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		server = new EmbeddedMemcachedServer();
+		server.start();
+		XMemcachedClientBuilder builder = new XMemcachedClientBuilder(
+				server.getAddress().getHostString() + ":" + server.getPort());
+		builder.setTranscoder(new FastJsonTranscoder());
+		client = builder.build();
+		cache = new BenchmarkCache(client);
+		cache.init();
+		value = BenchmarkItem.create(1, valueSize);
+		for (int i = 0; i < KEY_COUNT; i++) {
+			cache.set(key(i), BenchmarkItem.create(i, valueSize));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		cache.shutdown();
+		server.stop();
+	}
+
+	@Benchmark
+	public BenchmarkItem get() {
+		return cache.get(randomKey());
+	}
+
+	@Benchmark
+	public boolean set() {
+		return cache.set(randomKey(), value);
+	}
+
+	@Benchmark
+	public Map<String, BenchmarkItem> bulkGet() {
+		List<String> keys = new ArrayList<String>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			keys.add(randomKey());
+		}
+		return cache.get(keys);
+	}
+
+	/**
+	 * Writes a batch without waiting for each reply,then waits for the last
+	 * one,the way bulk loads fill a cache.
+	 */
+	@Benchmark
+	public boolean bulkSet() {
+		for (int i = 1; i < batchSize; i++) {
+			cache.setWithNoReply(randomKey(), value);
+		}
+		return cache.set(randomKey(), value);
+	}
+
+	private static String randomKey() {
+		return key(ThreadLocalRandom.current().nextInt(KEY_COUNT));
+	}
+
+	private static String key(int i) {
+		return "item:" + i;
+	}
+}
@@ -0,0 +1,37 @@
+package com.kaisen.common.benchmarks;
+
+import net.rubyeye.xmemcached.MemcachedClient;
+
+import com.kaisen.common.cache.BaseCache;
+
+/**
+ * The cache under benchmark,with the default settings of BaseCache.
+ */
+public class BenchmarkCache extends BaseCache<BenchmarkItem> {
+	private final MemcachedClient memcachedClient;
+
+	public BenchmarkCache(MemcachedClient memcachedClient) {
+		this.memcachedClient = memcachedClient;
+	}
+
+	@Override
+	protected MemcachedClient getMemcachedClient() {
+		return memcachedClient;
+	}
+
+	@Override
+	protected int getExpirationTime() {
+		return 3600;
+	}
+
+	String memcachedKey(String key) {
+		return buildKey(key);
+	}
+
+	/**
+	 * Run the post construct initialization,as the container would.
+	 */
+	void init() {
+		initialize();
+	}
+}
@@ -0,0 +1,112 @@
+package com.kaisen.common.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typical cached entity,sized by the length of its text.
+ */
+public class BenchmarkItem {
+	private long id;
+	private String name;
+	private String description;
+	private int price;
+	private boolean available;
+	private long createdAt;
+	private List<String> tags;
+
+	public static BenchmarkItem create(long id, int textLength) {
+		BenchmarkItem item = new BenchmarkItem();
+		item.id = id;
+		item.name = "item-" + id;
+		item.description = text(textLength);
+		item.price = (int) (id * 100 % 99991);
+		item.available = id % 2 == 0;
+		item.createdAt = 1420070400000L + id;
+		item.tags = new ArrayList<String>();
+		item.tags.add("shop:" + id % 97);
+		item.tags.add("category:" + id % 13);
+		return item;
+	}
+
+	/**
+	 * Returns the same fields as a generic map.
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("id", id);
+		map.put("name", name);
+		map.put("description", description);
+		map.put("price", price);
+		map.put("available", available);
+		map.put("createdAt", createdAt);
+		map.put("tags", tags);
+		return map;
+	}
+
+	private static String text(int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			builder.append(i % 10 == 9 ? ' ' : (char) ('a' + i % 26));
+		}
+		return builder.toString();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public int getPrice() {
+		return price;
+	}
+
+	public void setPrice(int price) {
+		this.price = price;
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	public void setAvailable(boolean available) {
+		this.available = available;
+	}
+
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(long createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	public void setTags(List<String> tags) {
+		this.tags = tags;
+	}
+}
@@ -0,0 +1,44 @@
+package com.kaisen.common.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import net.rubyeye.xmemcached.KeyProvider;
+import net.rubyeye.xmemcached.impl.DefaultKeyProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the memcached key of a cache key:the per cache prefix of
+ * BaseCache.buildKey and the default key provider of xmemcached applied
+ * after it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBenchmark {
+	private final BenchmarkCache cache = new BenchmarkCache(null);
+	private final KeyProvider keyProvider = DefaultKeyProvider.INSTANCE;
+	private final String key = "user:1234567:profile";
+	private final String memcachedKey = cache.memcachedKey(key);
+
+	@Benchmark
+	public String buildKey() {
+		return cache.memcachedKey(key);
+	}
+
+	@Benchmark
+	public String keyProvider() {
+		return keyProvider.process(memcachedKey);
+	}
+}
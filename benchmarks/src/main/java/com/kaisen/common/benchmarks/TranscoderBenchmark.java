@@ -0,0 +1,95 @@
+package com.kaisen.common.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.fastjson.TypeReference;
+import com.kaisen.common.xmemcached.transcoders.FastJsonTranscoder;
+
+/**
+ * {@link FastJsonTranscoder} encode and decode of an entity,the same fields
+ * as a generic map,and a list of entities.Small values are about 100 bytes,
+ * medium about 1 KB,large values about 64 KB and compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranscoderBenchmark {
+	@Param({ "pojo", "map", "list" })
+	private String shape;
+
+	@Param({ "small", "medium", "large" })
+	private String size;
+
+	private FastJsonTranscoder transcoder;
+	private Object value;
+	private CachedData encoded;
+
+	@Setup
+	public void setup() {
+		int textLength;
+		int listLength;
+		switch (size) {
+		case "small":
+			textLength = 16;
+			listLength = 1;
+			break;
+		case "medium":
+			textLength = 900;
+			listLength = 8;
+			break;
+		default:
+			textLength = 64 * 1024;
+			listLength = 400;
+		}
+		switch (shape) {
+		case "pojo":
+			transcoder = new FastJsonTranscoder(BenchmarkItem.class);
+			value = BenchmarkItem.create(1, textLength);
+			break;
+		case "map":
+			transcoder = new FastJsonTranscoder();
+			value = BenchmarkItem.create(1, textLength).toMap();
+			break;
+		default:
+			transcoder = new FastJsonTranscoder(
+					new TypeReference<List<BenchmarkItem>>() {
+					});
+			List<BenchmarkItem> items = new ArrayList<BenchmarkItem>();
+			for (int i = 0; i < listLength; i++) {
+				items.add(BenchmarkItem.create(i, 100));
+			}
+			value = items;
+		}
+		encoded = transcoder.encode(value);
+	}
+
+	@Benchmark
+	public CachedData encode() {
+		return transcoder.encode(value);
+	}
+
+	@Benchmark
+	public Object decode() {
+		return transcoder.decode(new CachedData(encoded.getFlag(), encoded
+				.getData()));
+	}
+}
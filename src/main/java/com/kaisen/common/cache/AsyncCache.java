@@ -0,0 +1,182 @@
+package com.kaisen.common.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.rubyeye.xmemcached.GetsResponse;
+
+/**
+ * Asynchronous view of a {@link BaseCache}.Every operation is run on the
+ * cache's bounded executor and returns immediately with a {@link CacheFuture},
+ * so a caller can issue several cache reads at once and combine them when
+ * they complete.
+ * 
+ * @see BaseCache#async()
+ * @param <T>
+ *            value type
+ */
+public class AsyncCache<T> {
+	private final BaseCache<T> cache;
+	private final Executor executor;
+
+	AsyncCache(BaseCache<T> cache, Executor executor) {
+		this.cache = cache;
+		this.executor = executor;
+	}
+
+	/**
+	 * Run the operation in the namespace of the caller.If the executor
+	 * rejects it,the future fails with the
+	 * {@link RejectedExecutionException}.
+	 */
+	private <V> CacheFuture<V> submit(Callable<V> callable) {
+		CacheFuture<V> future = new CacheFuture<V>(
+				cache.inCurrentNamespace(callable));
+		try {
+			executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			future.fail(e);
+		}
+		return future;
+	}
+
+	/**
+	 * @see BaseCache#get(String)
+	 */
+	public CacheFuture<T> get(final String key) {
+		return submit(new Callable<T>() {
+			@Override
+			public T call() {
+				return cache.get(key);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#get(String, long)
+	 */
+	public CacheFuture<T> get(final String key, final long timeout) {
+		return submit(new Callable<T>() {
+			@Override
+			public T call() {
+				return cache.get(key, timeout);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#gets(String)
+	 */
+	public CacheFuture<GetsResponse<T>> gets(final String key) {
+		return submit(new Callable<GetsResponse<T>>() {
+			@Override
+			public GetsResponse<T> call() {
+				return cache.gets(key);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#get(Collection)
+	 */
+	public CacheFuture<Map<String, T>> get(
+			final Collection<String> keyCollections) {
+		return submit(new Callable<Map<String, T>>() {
+			@Override
+			public Map<String, T> call() {
+				return cache.get(keyCollections);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#set(String, int, Object)
+	 */
+	public CacheFuture<Boolean> set(final String key, final int exp,
+			final Object value) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.set(key, exp, value);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#set(String, Object)
+	 */
+	public CacheFuture<Boolean> set(final String key, final Object value) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.set(key, value);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#add(String, int, Object)
+	 */
+	public CacheFuture<Boolean> add(final String key, final int exp,
+			final Object value) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.add(key, exp, value);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#cas(String, int, Object, long)
+	 */
+	public CacheFuture<Boolean> cas(final String key, final int exp,
+			final Object value, final long cas) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.cas(key, exp, value, cas);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#delete(String)
+	 */
+	public CacheFuture<Boolean> delete(final String key) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.delete(key);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#incr(String, long, long)
+	 */
+	public CacheFuture<Long> incr(final String key, final long delta,
+			final long initValue) {
+		return submit(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return cache.incr(key, delta, initValue);
+			}
+		});
+	}
+
+	/**
+	 * @see BaseCache#touch(String, int)
+	 */
+	public CacheFuture<Boolean> touch(final String key, final int exp) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return cache.touch(key, exp);
+			}
+		});
+	}
+}
@@ -1,14 +1,47 @@
 package com.kaisen.common.cache;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import net.rubyeye.xmemcached.CASOperation;
 import net.rubyeye.xmemcached.Counter;
@@ -17,43 +50,2093 @@ import net.rubyeye.xmemcached.KeyProvider;
 import net.rubyeye.xmemcached.MemcachedClient;
 import net.rubyeye.xmemcached.MemcachedClientCallable;
 import net.rubyeye.xmemcached.MemcachedClientStateListener;
+import net.rubyeye.xmemcached.XMemcachedClient;
 import net.rubyeye.xmemcached.auth.AuthInfo;
+import net.rubyeye.xmemcached.exception.MemcachedClientException;
 import net.rubyeye.xmemcached.exception.MemcachedException;
 import net.rubyeye.xmemcached.impl.ReconnectRequest;
 import net.rubyeye.xmemcached.networking.Connector;
+import net.rubyeye.xmemcached.transcoders.CachedData;
 import net.rubyeye.xmemcached.transcoders.Transcoder;
 import net.rubyeye.xmemcached.utils.Protocol;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.kaisen.common.xmemcached.transcoders.CachedDataTranscoder;
+import com.kaisen.common.xmemcached.transcoders.FastJsonTranscoder;
+
 public abstract class BaseCache<T> {
 	protected abstract MemcachedClient getMemcachedClient();
 
-	protected abstract int getExpirationTime();
+	protected abstract int getExpirationTime();
+
+	/**
+	 * Maximum number of entries kept in the local cache in front of
+	 * memcached.The default is 0,which disables the local cache.
+	 * 
+	 * @return
+	 */
+	protected int getNearCacheMaximumSize() {
+		return 0;
+	}
+
+	/**
+	 * Maximum total weight of the local cache,estimated from the serialized
+	 * size of the values in bytes.0 means the local cache is bounded by entry
+	 * count only.
+	 * 
+	 * @return
+	 */
+	protected long getNearCacheMaximumWeight() {
+		return 0;
+	}
+
+	/**
+	 * Time to live of a local copy,in seconds.Can be up to 30 days. After 30
+	 * days, is treated as a unix timestamp of an exact date.Defaults to
+	 * {@link #getExpirationTime()},override it to keep local copies fresher
+	 * than the memcached items.
+	 * 
+	 * @return
+	 */
+	protected int getNearCacheExpirationTime() {
+		return getExpirationTime();
+	}
+
+	/**
+	 * File of the off-heap cache between the local cache and memcached.Values
+	 * are kept serialized in the memory mapped file instead of the java heap,
+	 * and are read again after a restart until they expire,so that a
+	 * restarted node does not start cold.Each cache needs its own file.The
+	 * default is null,which disables the off-heap cache.
+	 * 
+	 * @return
+	 */
+	protected Path getOffHeapCacheFile() {
+		return null;
+	}
+
+	/**
+	 * Maximum total size of the values in the off-heap cache,in bytes.The
+	 * oldest values are evicted first.The default is 64 MB.
+	 * 
+	 * @return
+	 */
+	protected long getOffHeapCacheMaximumSize() {
+		return 64L << 20;
+	}
+
+	/**
+	 * Time to live of an off-heap copy,in seconds.Defaults to
+	 * {@link #getNearCacheExpirationTime()}.Copies are not invalidated by
+	 * writes of other nodes,nor by writes made while the node was down,so this
+	 * bounds how stale a value read after a restart can be.
+	 * 
+	 * @return
+	 */
+	protected int getOffHeapCacheExpirationTime() {
+		return getNearCacheExpirationTime();
+	}
+
+	/**
+	 * Whether to collect the metrics returned by {@link #getCacheMetrics()}:
+	 * hit,miss and error counts,per operation latency histograms and value
+	 * size histograms.They are also registered as a JMX MXBean named
+	 * <code>com.kaisen.common.cache:type=BaseCache,name="class name"</code>.
+	 * The default is false.
+	 * 
+	 * @return
+	 */
+	protected boolean isMetricsEnabled() {
+		return false;
+	}
+
+	/**
+	 * Expiration time of the sentinel stored by
+	 * {@link #getOrLoad(String, int, CacheLoader)} when the loader finds no
+	 * value,in seconds.Until it expires,reads of the key report it as
+	 * {@link CacheResult.Status#ABSENT absent} and getOrLoad returns null
+	 * without running the loader.Keep it short.The default is 0,which
+	 * disables caching absent values.
+	 * 
+	 * @return
+	 */
+	protected int getAbsentExpirationTime() {
+		return 0;
+	}
+
+	/**
+	 * Maximum number of threads running loaders of
+	 * {@link #getOrLoad(String, int, CacheLoader)} at the same time after
+	 * memcached failed to answer.Further callers get null instead of loading,
+	 * so that a memcached outage does not turn into an overload of the backing
+	 * store.The default is 0,which does not limit reloads.
+	 * 
+	 * @return
+	 */
+	protected int getMaxReloadsOnError() {
+		return 0;
+	}
+
+	/**
+	 * Create the circuit breaker of this cache,for instance
+	 * <code>new CircuitBreaker(getClass().getSimpleName(), 0.5, 100, 5000, 3)</code>
+	 * .Timeouts and memcached errors are reported to it,and while it is open
+	 * every operation fails fast,returning what it returns on errors,instead
+	 * of waiting for its timeout.{@link #getOrLoad(String, int, CacheLoader)}
+	 * then goes straight to the loader.The default is null,which disables
+	 * the circuit breaker.
+	 * 
+	 * @return
+	 */
+	protected CircuitBreaker createCircuitBreaker() {
+		return null;
+	}
+
+	/**
+	 * Number of hot keys tracked by {@link #getHotKeys()}.Reads are sampled
+	 * into a frequency sketch which keeps the keys accessed most often.The
+	 * default is 0,which disables hot key detection.
+	 * 
+	 * @return
+	 */
+	protected int getHotKeyCount() {
+		return 0;
+	}
+
+	/**
+	 * One in this number of reads is sampled for hot key detection.The
+	 * default is 8.
+	 * 
+	 * @return
+	 */
+	protected int getHotKeySampleInterval() {
+		return 8;
+	}
+
+	/**
+	 * Time to live of the local copies of hot keys,in seconds.When positive,
+	 * {@link #get(String)} keeps a local copy of the value of a hot key,which
+	 * takes its load off the memcached node owning it.Keep it short,other
+	 * nodes' updates are only seen once the copy expires.The default is 0,
+	 * which disables local copies of hot keys.
+	 * 
+	 * @return
+	 */
+	protected int getHotKeyLocalTime() {
+		return 0;
+	}
+
+	/**
+	 * Time to live of the cluster wide lease taken by
+	 * {@link #getOrLoad(String, int, CacheLoader)},in seconds.While a node
+	 * holds the lease of a key,the other nodes wait for it to store the value
+	 * instead of running their own loader.The default is 0,which disables the
+	 * lease so that every node loads on its own.
+	 * 
+	 * @return
+	 */
+	protected int getLoadLeaseTime() {
+		return 0;
+	}
+
+	/**
+	 * Time after which a value stored by
+	 * {@link #getOrLoad(String, int, CacheLoader)} turns stale,in seconds.A
+	 * stale value is still returned,while one background task reloads
+	 * it.Should be shorter than the expiration time,which stays the hard limit
+	 * of the memcached item.The default is 0,which disables refreshing so
+	 * that values are only loaded once they have expired.
+	 * 
+	 * @return
+	 */
+	protected int getRefreshTime() {
+		return 0;
+	}
+
+	/**
+	 * Weight of the probabilistic early expiration of values stored by
+	 * {@link #getOrLoad(String, int, CacheLoader)}.When positive,each read
+	 * may refresh the value ahead of its expiry,with a probability rising as
+	 * the expiry gets closer and the slower the loader was,so that the nodes
+	 * of a cluster do not all reload a hot key in the same second.1.0 is a
+	 * good start,greater values refresh earlier.The value expires at the soft
+	 * expiry of {@link #getRefreshTime()} if set,otherwise at its expiration
+	 * time.The default is 0,which disables early expiration.
+	 * 
+	 * @return
+	 */
+	protected double getEarlyExpirationBeta() {
+		return 0;
+	}
+
+	/**
+	 * Create the loader of the keys having a value.When not null,a bloom
+	 * filter of the keys is built in the background at startup,and reads of
+	 * keys it does not contain are answered as
+	 * {@link CacheResult.Status#ABSENT absent} without calling memcached.Keys
+	 * written through this cache are added to the filter,keys written by
+	 * other nodes only after the next rebuild,so the loader should list the
+	 * keys of the backing store rather than those of memcached.getOrLoad does
+	 * not trust the filter,it still reads memcached and runs its loader for
+	 * keys missing from the filter,and adds the loaded keys to it.The default
+	 * is null,which disables the filter.
+	 * 
+	 * @see FileKeyLoader
+	 * @return
+	 */
+	protected KeyLoader createKeyLoader() {
+		return null;
+	}
+
+	/**
+	 * Interval between two rebuilds of the key filter,in seconds.A rebuild
+	 * loads the keys again and swaps the new filter in once it is complete,
+	 * reads keep using the old one meanwhile.The default is 0,which builds
+	 * the filter once at startup.
+	 * 
+	 * @return
+	 */
+	protected int getKeyFilterRebuildInterval() {
+		return 0;
+	}
+
+	/**
+	 * Expected false positive rate of the key filter,the share of absent keys
+	 * still looked up in memcached.The default is 0.01.
+	 * 
+	 * @return
+	 */
+	protected double getKeyFilterFalsePositiveRate() {
+		return 0.01;
+	}
+
+	/**
+	 * How long the generations of tags are cached locally,in milliseconds.An
+	 * invalidated tag is seen by the other nodes once their copy expires.The
+	 * default is 200,0 fetches the generations on every read of a tagged
+	 * value.
+	 * 
+	 * @see #invalidateTag(String)
+	 * @return
+	 */
+	protected long getTagGenerationCacheTime() {
+		return 200;
+	}
+
+	/**
+	 * How long the versions of namespaces are cached locally,in milliseconds.
+	 * A namespace invalidated by another node is seen here once the local
+	 * copy expires,or at once after {@link #refreshNamespace(String)}.The
+	 * default is 1000,0 reads the version from memcached on every
+	 * {@link #beginWithNamespace(String)}.
+	 * 
+	 * @return
+	 */
+	protected long getNamespaceVersionCacheTime() {
+		return 1000;
+	}
+
+	/**
+	 * Values larger than this once serialized,in bytes,are split into chunks
+	 * of this size stored under keys of their own,with a manifest holding the
+	 * checksum of the value under its key.Reads,gets and cas operations
+	 * included,get all the chunks in one bulk get and join them.Values are
+	 * chunked by set,setWithNoReply,setTagged,getOrLoad and snapshot
+	 * imports;add,replace,cas and append still fail on values over the item
+	 * size limit of memcached.The default is 1000 KB,just below the 1 MB
+	 * limit,0 disables chunking.
+	 * 
+	 * @return
+	 */
+	protected int getChunkSize() {
+		return 1000 * 1024;
+	}
+
+	/**
+	 * How often the deltas of {@link #counters()} are flushed to memcached,in
+	 * milliseconds.The default is 1000.
+	 * 
+	 * @return
+	 */
+	protected long getCounterFlushInterval() {
+		return 1000;
+	}
+
+	/**
+	 * Net delta of a counter of {@link #counters()} that makes it flush before
+	 * the next interval.The default is 0,which flushes on the interval only.
+	 * 
+	 * @return
+	 */
+	protected long getCounterFlushThreshold() {
+		return 0;
+	}
+
+	/**
+	 * Snapshot file replayed into memcached and the local caches at startup,
+	 * see {@link #importSnapshot(Path)}.Nothing is replayed if the file does
+	 * not exist.The default is null,which disables the replay.
+	 * 
+	 * @see #exportSnapshot(Path, Collection)
+	 * @return
+	 */
+	protected Path getSnapshotFile() {
+		return null;
+	}
+
+	/**
+	 * Number of items read or written together when exporting or importing a
+	 * snapshot.The default is 100.
+	 * 
+	 * @return
+	 */
+	protected int getSnapshotBatchSize() {
+		return 100;
+	}
+
+	/**
+	 * Number of threads replaying the batches of a snapshot.The default is
+	 * 4.
+	 * 
+	 * @return
+	 */
+	protected int getSnapshotImportThreads() {
+		return 4;
+	}
+
+	/**
+	 * Create the executor reloading stale values,see {@link #getRefreshTime()}
+	 * .The default pool has one thread per processor and a bounded queue,when
+	 * the queue is full the refresh is skipped and tried again by a later
+	 * read.
+	 * 
+	 * @return
+	 */
+	protected ExecutorService createRefreshExecutor() {
+		int poolSize = Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize,
+				poolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(1024), new NamedThreadFactory(
+						getClass().getSimpleName() + "-refresh"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Create the executor running the operations of {@link #async()}.The
+	 * default pool has two threads per processor and a bounded queue,when the
+	 * queue is full the caller runs the operation itself.The executor must
+	 * throw {@link RejectedExecutionException} for operations it drops.
+	 * 
+	 * @return
+	 */
+	protected ExecutorService createAsyncExecutor() {
+		int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize,
+				poolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(poolSize * 256),
+				new NamedThreadFactory(getClass().getSimpleName() + "-async"),
+				new ThreadPoolExecutor.CallerRunsPolicy() {
+					@Override
+					public void rejectedExecution(Runnable r,
+							ThreadPoolExecutor e) {
+						if (e.isShutdown()) {
+							// CallerRunsPolicy would drop it silently
+							throw new RejectedExecutionException(
+									"Cache is shut down");
+						}
+						super.rejectedExecution(r, e);
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Create the transcoder of the values of this cache.When the client uses a
+	 * {@link FastJsonTranscoder},the default binds a copy of it to the type
+	 * argument T of the subclass,so that values are decoded straight into T
+	 * instead of generic JSON objects,and lifts its size limit when large
+	 * values are chunked,see {@link #getChunkSize()}.Return null to use the
+	 * transcoder of the client as it is.
+	 * 
+	 * Operations xmemcached offers no transcoder for,such as getAndTouch,
+	 * append,prepend and casWithNoReply,always use the transcoder of the
+	 * client.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected Transcoder<T> createTranscoder() {
+		Transcoder<?> transcoder = getMemcachedClient().getTranscoder();
+		Type valueType = resolveValueType();
+		boolean chunked = getChunkSize() > 0;
+		if (transcoder instanceof FastJsonTranscoder
+				&& (valueType != Object.class || chunked)) {
+			FastJsonTranscoder clientTranscoder = (FastJsonTranscoder) transcoder;
+			FastJsonTranscoder typed = clientTranscoder
+					.forType(valueType != Object.class ? valueType
+							: clientTranscoder.getType());
+			if (chunked) {
+				typed.setMaxSize(Integer.MAX_VALUE);
+			}
+			return (Transcoder<T>) (Transcoder<?>) typed;
+		}
+		return null;
+	}
+
+	private static final int MAX_RELATIVE_EXPIRATION = 60 * 60 * 24 * 30;
+
+	private static final String LEASE_SUFFIX = "#lease";
+
+	private static final String TAG_PREFIX = "#tag:";
+
+	/** Prefix of the keys holding namespace versions,as in xmemcached */
+	private static final String NAMESPACE_PREFIX = "namespace:";
+
+	private static final String UNRESOLVED_VERSION = "~";
+
+	private static final int NAMESPACE_VERSION_CACHE_SIZE = 10000;
+
+	private static final String[] NO_TAGS = new String[0];
+
+	private static final int TAG_GENERATION_CACHE_SIZE = 10000;
+
+	private static final long LEASE_POLL_INTERVAL = 50;
+
+	private final ConcurrentMap<String, FutureTask<T>> loadingTasks = new ConcurrentHashMap<String, FutureTask<T>>();
+
+	private volatile AsyncCache<T> asyncCache;
+
+	private volatile BufferedCounters bufferedCounters;
+
+	private ScheduledExecutorService counterExecutor;
+
+	private ExecutorService asyncExecutor;
+
+	private volatile ExecutorService refreshExecutor;
+
+	private NearCache<T> nearCache;
+
+	private OffHeapCache offHeapCache;
+
+	private HotKeyDetector hotKeyDetector;
+
+	private CacheMetrics metrics;
+
+	private CircuitBreaker circuitBreaker;
+
+	private Semaphore reloadLimiter;
+
+	private ObjectName metricsName;
+
+	private NearCache<T> hotKeyCache;
+
+	private volatile Transcoder<T> transcoder;
+
+	private KeyLoader keyLoader;
+
+	private ScheduledExecutorService keyFilterExecutor;
+
+	private volatile BloomFilter keyFilter;
+
+	/** Keys written while the key filter is being rebuilt */
+	private volatile Queue<String> writtenKeys;
+
+	private NearCache<Long> tagGenerations;
+
+	private NearCache<String> namespaceVersions;
+
+	private final ThreadLocal<Namespace> namespaceLocal = new ThreadLocal<Namespace>();
+
+	/**
+	 * Run the initialization a container runs through {@link PostConstruct},
+	 * for a cache created outside of one,in tests or benchmarks for
+	 * instance.Call it once,after construction and before any operation.
+	 */
+	protected final void initialize() {
+		init();
+	}
+
+	@PostConstruct
+	private void init() {
+		if (isMetricsEnabled()) {
+			metrics = new CacheMetrics();
+			registerMetrics();
+		}
+		circuitBreaker = createCircuitBreaker();
+		int maxReloadsOnError = getMaxReloadsOnError();
+		if (maxReloadsOnError > 0) {
+			reloadLimiter = new Semaphore(maxReloadsOnError);
+		}
+		int nearCacheMaximumSize = getNearCacheMaximumSize();
+		if (nearCacheMaximumSize > 0) {
+			nearCache = new NearCache<T>(nearCacheMaximumSize,
+					getNearCacheMaximumWeight(),
+					expirationMillis(getNearCacheExpirationTime()));
+		}
+		Path offHeapCacheFile = getOffHeapCacheFile();
+		if (offHeapCacheFile != null) {
+			try {
+				offHeapCache = new OffHeapCache(offHeapCacheFile,
+						getOffHeapCacheMaximumSize(),
+						expirationMillis(getOffHeapCacheExpirationTime()));
+			} catch (IOException e) {
+				logger.error("", e);
+			}
+		}
+		int hotKeyCount = getHotKeyCount();
+		if (hotKeyCount > 0) {
+			hotKeyDetector = new HotKeyDetector(hotKeyCount);
+			int hotKeyLocalTime = getHotKeyLocalTime();
+			if (hotKeyLocalTime > 0) {
+				hotKeyCache = new NearCache<T>(hotKeyCount, 0,
+						hotKeyLocalTime * 1000L);
+			}
+		}
+		long tagGenerationCacheTime = getTagGenerationCacheTime();
+		if (tagGenerationCacheTime > 0) {
+			tagGenerations = new NearCache<Long>(TAG_GENERATION_CACHE_SIZE, 0,
+					tagGenerationCacheTime);
+		}
+		long namespaceVersionCacheTime = getNamespaceVersionCacheTime();
+		if (namespaceVersionCacheTime > 0) {
+			namespaceVersions = new NearCache<String>(
+					NAMESPACE_VERSION_CACHE_SIZE, 0, namespaceVersionCacheTime);
+		}
+		keyLoader = createKeyLoader();
+		if (keyLoader != null) {
+			scheduleKeyFilter();
+		}
+		Path snapshotFile = getSnapshotFile();
+		if (snapshotFile != null && Files.exists(snapshotFile)) {
+			importSnapshot(snapshotFile);
+		}
+	}
+
+	private void scheduleKeyFilter() {
+		keyFilterExecutor = Executors
+				.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+						getClass().getSimpleName() + "-key-filter"));
+		Runnable rebuild = new Runnable() {
+			@Override
+			public void run() {
+				rebuildKeyFilter();
+			}
+		};
+		int interval = getKeyFilterRebuildInterval();
+		if (interval > 0) {
+			keyFilterExecutor.scheduleWithFixedDelay(rebuild, 0, interval,
+					TimeUnit.SECONDS);
+		} else {
+			keyFilterExecutor.execute(rebuild);
+		}
+	}
+
+	/**
+	 * Build a new key filter and swap it in.Keys written while the keys are
+	 * loaded are queued and added to the new filter,a writer checks the queue
+	 * and the current filter again after adding its key,so no key is lost to
+	 * the swap.
+	 */
+	private void rebuildKeyFilter() {
+		Queue<String> written = new ConcurrentLinkedQueue<String>();
+		writtenKeys = written;
+		try {
+			long start = System.currentTimeMillis();
+			Collection<String> keys = keyLoader.loadKeys();
+			BloomFilter filter = new BloomFilter(keys.size()
+					+ keys.size() / 8, getKeyFilterFalsePositiveRate());
+			for (String key : keys) {
+				filter.put(key);
+			}
+			keyFilter = filter;
+			drain(written, filter);
+			writtenKeys = null;
+			drain(written, filter);
+			logger.info("Key filter of " + getClass().getName() + " built with "
+					+ keys.size() + " keys in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		} catch (Exception e) {
+			writtenKeys = null;
+			logger.error("", e);
+		}
+	}
+
+	private static void drain(Queue<String> keys, BloomFilter filter) {
+		String key;
+		while ((key = keys.poll()) != null) {
+			filter.put(key);
+		}
+	}
+
+	private void rememberKey(String key) {
+		if (keyLoader == null) {
+			return;
+		}
+		BloomFilter filter = keyFilter;
+		if (filter != null) {
+			filter.put(key);
+		}
+		// a rebuild started meanwhile queues the key,one finished meanwhile
+		// has swapped its filter in
+		Queue<String> written = writtenKeys;
+		if (written != null) {
+			written.add(key);
+		}
+		BloomFilter current = keyFilter;
+		if (current != null && current != filter) {
+			current.put(key);
+		}
+	}
+
+	/**
+	 * Returns whether the key filter tells that the key has no value.
+	 */
+	private boolean isKnownAbsent(String key) {
+		BloomFilter filter = keyFilter;
+		return filter != null && !filter.mightContain(key);
+	}
+
+	private Collection<String> filterKeys(Collection<String> keys) {
+		BloomFilter filter = keyFilter;
+		if (filter == null) {
+			return keys;
+		}
+		List<String> result = new ArrayList<String>(keys.size());
+		for (String key : keys) {
+			if (filter.mightContain(key)) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+
+	private void registerMetrics() {
+		try {
+			ObjectName name = new ObjectName(
+					"com.kaisen.common.cache:type=BaseCache,name="
+							+ ObjectName.quote(getClass().getName()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+					name);
+			metricsName = name;
+		} catch (JMException e) {
+			logger.warn("", e);
+		}
+	}
+
+	private void unregisterMetrics() {
+		if (metricsName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					metricsName);
+		} catch (JMException e) {
+			logger.warn("", e);
+		}
+		metricsName = null;
+	}
+
+	/**
+	 * Keys of this cache are prefixed with the class name,so that several
+	 * caches can share one memcached client without overwriting each other's
+	 * items.
+	 */
+	private final String keyPrefix = getClass().getName() + ":";
+
+	/**
+	 * Returns the memcached key of the cache key.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	protected final String buildKey(String key) {
+		return currentKeyPrefix().concat(key);
+	}
+
+	/**
+	 * Returns the prefix of the memcached keys,which includes the version of
+	 * the namespace of the current thread if any.
+	 */
+	private String currentKeyPrefix() {
+		Namespace namespace = namespaceLocal.get();
+		return namespace == null ? keyPrefix : namespace.keyPrefix
+				.concat(keyPrefix);
+	}
+
+	private List<String> buildKeys(Collection<String> keyCollections) {
+		String prefix = currentKeyPrefix();
+		List<String> keys = new ArrayList<String>(keyCollections.size());
+		for (String key : keyCollections) {
+			keys.add(prefix.concat(key));
+		}
+		return keys;
+	}
+
+	/**
+	 * Map the memcached keys of a bulk result back to the cache keys.
+	 */
+	private <V> Map<String, V> stripKeys(Map<String, V> map) {
+		if (map == null) {
+			return null;
+		}
+		int prefixLength = currentKeyPrefix().length();
+		Map<String, V> result = new HashMap<String, V>(
+				(int) (map.size() / 0.75f) + 1);
+		for (Map.Entry<String, V> entry : map.entrySet()) {
+			// absent sentinels decode to null
+			if (entry.getValue() != null) {
+				result.put(entry.getKey().substring(prefixLength),
+						entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(BaseCache.class);
+
+	/**
+	 * Convert a memcached expiration time to a time to live in milliseconds.
+	 */
+	private static long expirationMillis(int exp) {
+		if (exp <= 0) {
+			return 0;
+		}
+		if (exp > MAX_RELATIVE_EXPIRATION) {
+			return Math.max(1, exp * 1000L - System.currentTimeMillis());
+		}
+		return exp * 1000L;
+	}
+
+	/**
+	 * The local cache is bypassed while a namespace is set on the current
+	 * thread,because the same key then names a different item.
+	 */
+	private boolean isNearCacheEnabled() {
+		return nearCache != null && !inNamespace();
+	}
+
+	private boolean isOffHeapCacheEnabled() {
+		return offHeapCache != null && !inNamespace();
+	}
+
+	private boolean inNamespace() {
+		return namespaceLocal.get() != null
+				|| XMemcachedClient.NAMESPACE_LOCAL.get() != null;
+	}
+
+	/**
+	 * Returns the callable running in the namespace of the calling thread,so
+	 * that it can be run by another thread.
+	 */
+	<V> Callable<V> inCurrentNamespace(final Callable<V> callable) {
+		final Namespace namespace = namespaceLocal.get();
+		final String clientNamespace = XMemcachedClient.NAMESPACE_LOCAL.get();
+		if (namespace == null && clientNamespace == null) {
+			return callable;
+		}
+		return new Callable<V>() {
+			@Override
+			public V call() throws Exception {
+				// the caller may run it itself,restore what it had
+				Namespace previous = namespaceLocal.get();
+				String previousClient = XMemcachedClient.NAMESPACE_LOCAL.get();
+				setNamespace(namespace, clientNamespace);
+				try {
+					return callable.call();
+				} finally {
+					setNamespace(previous, previousClient);
+				}
+			}
+		};
+	}
+
+	private void setNamespace(Namespace namespace, String clientNamespace) {
+		if (namespace == null) {
+			namespaceLocal.remove();
+		} else {
+			namespaceLocal.set(namespace);
+		}
+		if (clientNamespace == null) {
+			XMemcachedClient.NAMESPACE_LOCAL.remove();
+		} else {
+			XMemcachedClient.NAMESPACE_LOCAL.set(clientNamespace);
+		}
+	}
+
+	private void invalidateLocal(String key) {
+		if (nearCache != null) {
+			nearCache.invalidate(key);
+		}
+		if (offHeapCache != null) {
+			offHeapCache.invalidate(key);
+		}
+		if (hotKeyCache != null) {
+			hotKeyCache.invalidate(key);
+		}
+	}
+
+	private void invalidateAllLocal() {
+		if (nearCache != null) {
+			nearCache.invalidateAll();
+		}
+		if (offHeapCache != null) {
+			offHeapCache.invalidateAll();
+		}
+		if (hotKeyCache != null) {
+			hotKeyCache.invalidateAll();
+		}
+	}
+
+	private long startTimer() {
+		return metrics == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Returns false if the circuit breaker rejects the call,the operation then
+	 * fails fast as if memcached had failed.
+	 */
+	private boolean allowRequest() {
+		return circuitBreaker == null || circuitBreaker.allowRequest();
+	}
+
+	/**
+	 * Record a finished call to memcached,successful or not.
+	 */
+	private void recordCall(CacheOperation operation, long start) {
+		if (metrics != null) {
+			metrics.recordLatency(operation, System.nanoTime() - start);
+		}
+		if (circuitBreaker != null) {
+			circuitBreaker.onCall();
+		}
+	}
+
+	private void recordError(CacheOperation operation, Exception e) {
+		if (metrics != null) {
+			metrics.recordError(operation);
+		}
+		if (circuitBreaker != null && !(e instanceof InterruptedException)) {
+			circuitBreaker.onFailure();
+		}
+	}
+
+	/**
+	 * Run the call through the circuit breaker,recording its latency and
+	 * errors.Errors are logged,the call then returns its fallback,as it does
+	 * when the circuit breaker rejects it.
+	 */
+	private <V> V execute(CacheOperation operation, Call<V> call) {
+		if (!allowRequest()) {
+			return call.fallback(null);
+		}
+		try {
+			return record(operation, call);
+		} catch (TimeoutException | InterruptedException | MemcachedException e) {
+			logger.error("", e);
+			return call.fallback(e);
+		}
+	}
+
+	/**
+	 * Run the call recording its latency and errors,without asking the
+	 * circuit breaker.Errors are thrown to the caller.
+	 */
+	private <V> V record(CacheOperation operation, Call<V> call)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		long start = startTimer();
+		try {
+			return call.call();
+		} catch (TimeoutException | InterruptedException | MemcachedException e) {
+			recordError(operation, e);
+			throw e;
+		} finally {
+			recordCall(operation, start);
+		}
+	}
+
+	/**
+	 * A call to memcached,run by
+	 * {@link BaseCache#execute(CacheOperation, Call)}.
+	 */
+	private abstract static class Call<V> {
+		private final V fallback;
+
+		/**
+		 * @param fallback
+		 *            the result of the call if it fails or the circuit breaker
+		 *            rejects it
+		 */
+		Call(V fallback) {
+			this.fallback = fallback;
+		}
+
+		abstract V call() throws TimeoutException, InterruptedException,
+				MemcachedException;
+
+		/**
+		 * Returns the result of the call when it failed with the error,or when
+		 * the circuit breaker rejected it,the error is then null.
+		 */
+		V fallback(Exception error) {
+			return fallback;
+		}
+	}
+
+	/**
+	 * Count a read as a hit if the value is not null,otherwise as a miss.
+	 */
+	private <V> V recordResult(V value) {
+		if (metrics != null) {
+			if (value != null) {
+				metrics.recordHits(1);
+			} else {
+				metrics.recordMisses(1);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Count a hit or a known absent key as a hit,a miss as a miss.
+	 */
+	private CacheResult<T> recordResult(CacheResult<T> result) {
+		if (metrics != null) {
+			if (result.isHit() || result.isAbsent()) {
+				metrics.recordHits(1);
+			} else if (result.isMiss()) {
+				metrics.recordMisses(1);
+			}
+		}
+		return result;
+	}
+
+	private <V> Map<String, V> recordResult(int requested,
+			Map<String, V> result) {
+		if (metrics != null && result != null) {
+			metrics.recordHits(result.size());
+			metrics.recordMisses(requested - result.size());
+		}
+		return result;
+	}
+
+	/**
+	 * Sample a read of the key for hot key detection.
+	 */
+	private void recordAccess(String key) {
+		HotKeyDetector detector = hotKeyDetector;
+		if (detector != null
+				&& ThreadLocalRandom.current().nextInt(
+						getHotKeySampleInterval()) == 0) {
+			detector.record(loadingKey(key));
+		}
+	}
+
+	private void recordAccess(Collection<String> keyCollections) {
+		if (hotKeyDetector != null) {
+			for (String key : keyCollections) {
+				recordAccess(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the local copy of a hot key,or null.
+	 */
+	private T getHotKeyCopy(String key) {
+		recordAccess(key);
+		if (hotKeyCache == null || inNamespace()) {
+			return null;
+		}
+		return hotKeyCache.get(key);
+	}
+
+	/**
+	 * Keep a local copy of the value if the key is hot.
+	 */
+	private T copyIfHot(String key, T value) {
+		if (value != null && hotKeyCache != null
+				&& !inNamespace() && hotKeyDetector.isHot(key)) {
+			hotKeyCache.put(key, value, 1);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the transcoder of the values of this cache,see
+	 * {@link #createTranscoder()}.
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected final Transcoder<T> getTranscoder() {
+		Transcoder<T> result = transcoder;
+		if (result == null) {
+			Transcoder<T> valueTranscoder = createTranscoder();
+			if (valueTranscoder == null) {
+				valueTranscoder = getMemcachedClient().getTranscoder();
+			}
+			result = new EnvelopeTranscoder<T>(valueTranscoder, metrics);
+			transcoder = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the type argument T given by the subclass,or Object if it can not
+	 * be resolved.
+	 */
+	private Type resolveValueType() {
+		for (Class<?> type = getClass(); type != BaseCache.class; type = type
+				.getSuperclass()) {
+			Type superType = type.getGenericSuperclass();
+			if (superType instanceof ParameterizedType
+					&& ((ParameterizedType) superType).getRawType() == BaseCache.class) {
+				Type valueType = ((ParameterizedType) superType)
+						.getActualTypeArguments()[0];
+				return valueType instanceof TypeVariable ? Object.class
+						: valueType;
+			}
+		}
+		return Object.class;
+	}
+
+	/**
+	 * The transcoder used to store values,which are passed in as Object.
+	 */
+	@SuppressWarnings("unchecked")
+	private Transcoder<Object> objectTranscoder() {
+		return (Transcoder<Object>) (Transcoder<?>) getTranscoder();
+	}
+
+	private T decode(CachedData data) {
+		return getTranscoder().decode(data);
+	}
+
+	/**
+	 * Decode the item,or return null if one of its tags was invalidated since
+	 * it was stored.
+	 */
+	private T decodeCurrent(CachedData data) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		ValueEnvelope envelope = ValueEnvelope.unwrap(data);
+		if (envelope == null) {
+			return decode(data);
+		}
+		return isCurrent(envelope) ? decode(envelope.getData()) : null;
+	}
+
+	/**
+	 * Decode the items of a bulk get,leaving out absent sentinels and items
+	 * with invalidated tags.The generations of all the tags are fetched at
+	 * once.
+	 */
+	private Map<String, T> decodeAll(Map<String, CachedData> dataMap)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		if (dataMap == null) {
+			return null;
+		}
+		Map<String, T> result = new HashMap<String, T>(
+				(int) (dataMap.size() / 0.75f) + 1);
+		Map<String, ValueEnvelope> tagged = null;
+		for (Map.Entry<String, CachedData> entry : dataMap.entrySet()) {
+			CachedData data = entry.getValue();
+			ValueEnvelope envelope = ValueEnvelope.unwrap(data);
+			if (envelope != null) {
+				if (!envelope.getTags().isEmpty()) {
+					if (tagged == null) {
+						tagged = new HashMap<String, ValueEnvelope>();
+					}
+					tagged.put(entry.getKey(), envelope);
+					continue;
+				}
+				data = envelope.getData();
+			}
+			T value = decode(data);
+			if (value != null) {
+				result.put(entry.getKey(), value);
+			}
+		}
+		if (tagged == null) {
+			return result;
+		}
+		Set<String> tags = new HashSet<String>();
+		for (ValueEnvelope envelope : tagged.values()) {
+			tags.addAll(envelope.getTags().keySet());
+		}
+		Map<String, Long> generations = getTagGenerations(tags);
+		for (Map.Entry<String, ValueEnvelope> entry : tagged.entrySet()) {
+			ValueEnvelope envelope = entry.getValue();
+			if (isCurrent(envelope.getTags(), generations)) {
+				T value = decode(envelope.getData());
+				if (value != null) {
+					result.put(entry.getKey(), value);
+				}
+			}
+		}
+		return result;
+	}
+
+	private boolean isCurrent(ValueEnvelope envelope) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		Map<String, Long> tags = envelope.getTags();
+		return tags.isEmpty()
+				|| isCurrent(tags, getTagGenerations(tags.keySet()));
+	}
+
+	private static boolean isCurrent(Map<String, Long> tags,
+			Map<String, Long> generations) {
+		for (Map.Entry<String, Long> entry : tags.entrySet()) {
+			if (!entry.getValue().equals(generations.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current generations of the tags,from the local cache or
+	 * from memcached in one bulk get.Tags without a generation yet are
+	 * initialized with the current time,so that an evicted counter does not
+	 * bring back the values of an older generation.
+	 */
+	private Map<String, Long> getTagGenerations(Collection<String> tags)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		final Map<String, Long> result = new LinkedHashMap<String, Long>(
+				(int) (tags.size() / 0.75f) + 1);
+		List<String> missingKeys = null;
+		for (String tag : tags) {
+			Long generation = tagGenerations == null ? null : tagGenerations
+					.get(tag);
+			if (generation != null) {
+				result.put(tag, generation);
+			} else {
+				if (missingKeys == null) {
+					missingKeys = new ArrayList<String>();
+				}
+				missingKeys.add(TAG_PREFIX.concat(tag));
+			}
+		}
+		if (missingKeys == null) {
+			return result;
+		}
+		if (!allowRequest()) {
+			throw new MemcachedException("Circuit breaker is open");
+		}
+		final List<String> keys = missingKeys;
+		return record(CacheOperation.GET_MULTI,
+				new Call<Map<String, Long>>(null) {
+					@Override
+					Map<String, Long> call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						MemcachedClient client = getMemcachedClient();
+						Map<String, CachedData> dataMap = client.get(keys,
+								CachedDataTranscoder.INSTANCE);
+						for (String tagKey : keys) {
+							CachedData data = dataMap == null ? null
+									: dataMap.get(tagKey);
+							Long generation = data == null ? null
+									: parseCounter(data);
+							if (generation == null) {
+								generation = incrCounter(client, tagKey, 0,
+										System.currentTimeMillis(),
+										data != null);
+							}
+							String tag = tagKey.substring(TAG_PREFIX.length());
+							result.put(tag, generation);
+							if (tagGenerations != null) {
+								tagGenerations.put(tag, generation, 0);
+							}
+						}
+						return result;
+					}
+				});
+	}
+
+	/**
+	 * Read the item from the local cache,the off-heap cache or memcached.
+	 * Absent sentinels are recognized without decoding them.
+	 */
+	private CacheResult<T> getCached(final String key, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		boolean nearCacheEnabled = isNearCacheEnabled();
+		if (nearCacheEnabled) {
+			T value = nearCache.get(key);
+			if (value != null) {
+				return CacheResult.hit(value);
+			}
+		}
+		boolean offHeapCacheEnabled = isOffHeapCacheEnabled();
+		CachedData data = offHeapCacheEnabled ? offHeapCache.get(key) : null;
+		if (data == null) {
+			data = getMemcachedClient().get(buildKey(key), timeout,
+					CachedDataTranscoder.INSTANCE);
+			if (data == null) {
+				return CacheResult.miss();
+			}
+			if (EnvelopeTranscoder.isAbsent(data)) {
+				return CacheResult.absent();
+			}
+			data = joinChunks(key, data, timeout);
+			if (data == null) {
+				return CacheResult.miss();
+			}
+			if (offHeapCacheEnabled) {
+				offHeapCache.put(key, data);
+			}
+		}
+		T value = decodeCurrent(data);
+		if (value == null) {
+			return CacheResult.miss();
+		}
+		if (nearCacheEnabled) {
+			nearCache.put(key, value, data.getData().length);
+		}
+		return CacheResult.hit(copyIfHot(key, value));
+	}
+
+	/**
+	 * Store the item,split into chunks when it is larger than
+	 * {@link #getChunkSize()}.The chunks are stored before the manifest,so
+	 * the manifest is only visible once they all are.
+	 */
+	private boolean setData(final String memcachedKey, final int exp,
+			final CachedData data, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return storeData(memcachedKey, exp, data, timeout, false);
+	}
+
+	/**
+	 * Add the item unless the key has a value,split into chunks like
+	 * {@link #setData(String, int, CachedData, long)}.The chunks of an item
+	 * which is not added are left to expire.
+	 */
+	private boolean addData(final String memcachedKey, final int exp,
+			final CachedData data, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return storeData(memcachedKey, exp, data, timeout, true);
+	}
+
+	private boolean storeData(final String memcachedKey, final int exp,
+			final CachedData data, final long timeout, final boolean add)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		MemcachedClient client = getMemcachedClient();
+		int chunkSize = getChunkSize();
+		CachedData item = data;
+		if (chunkSize > 0 && data.getData().length > chunkSize) {
+			ChunkManifest manifest = ChunkManifest.of(data, chunkSize);
+			for (int i = 0, count = manifest.getChunkCount(); i < count; i++) {
+				if (!client.set(manifest.getChunkKey(memcachedKey, i), exp,
+						manifest.getChunk(data.getData(), i),
+						CachedDataTranscoder.INSTANCE, timeout)) {
+					return false;
+				}
+			}
+			item = manifest.encode();
+		}
+		if (add) {
+			return client.add(memcachedKey, exp, item,
+					CachedDataTranscoder.INSTANCE, timeout);
+		}
+		return client.set(memcachedKey, exp, item,
+				CachedDataTranscoder.INSTANCE, timeout);
+	}
+
+	/**
+	 * @see #setData(String, int, CachedData, long)
+	 */
+	private void setDataWithNoReply(final String memcachedKey, final int exp,
+			final CachedData data) throws InterruptedException,
+			MemcachedException {
+		storeDataWithNoReply(memcachedKey, exp, data, false);
+	}
+
+	/**
+	 * @see #addData(String, int, CachedData, long)
+	 */
+	private void addDataWithNoReply(final String memcachedKey, final int exp,
+			final CachedData data) throws InterruptedException,
+			MemcachedException {
+		storeDataWithNoReply(memcachedKey, exp, data, true);
+	}
+
+	private void storeDataWithNoReply(final String memcachedKey,
+			final int exp, final CachedData data, final boolean add)
+			throws InterruptedException, MemcachedException {
+		MemcachedClient client = getMemcachedClient();
+		int chunkSize = getChunkSize();
+		CachedData item = data;
+		if (chunkSize > 0 && data.getData().length > chunkSize) {
+			ChunkManifest manifest = ChunkManifest.of(data, chunkSize);
+			for (int i = 0, count = manifest.getChunkCount(); i < count; i++) {
+				client.setWithNoReply(manifest.getChunkKey(memcachedKey, i),
+						exp, manifest.getChunk(data.getData(), i),
+						CachedDataTranscoder.INSTANCE);
+			}
+			item = manifest.encode();
+		}
+		if (add) {
+			client.addWithNoReply(memcachedKey, exp, item,
+					CachedDataTranscoder.INSTANCE);
+		} else {
+			client.setWithNoReply(memcachedKey, exp, item,
+					CachedDataTranscoder.INSTANCE);
+		}
+	}
+
+	/**
+	 * Returns the item,or the value its chunks hold if it is a chunk
+	 * manifest.
+	 */
+	private CachedData joinChunks(final String key, final CachedData data,
+			final long timeout) throws TimeoutException, InterruptedException,
+			MemcachedException {
+		if (data == null || !ChunkManifest.isManifest(data)) {
+			return data;
+		}
+		return joinChunks(Collections.singletonMap(key, data), timeout).get(
+				key);
+	}
+
+	/**
+	 * Replace the chunk manifests of a bulk read by the values their chunks
+	 * hold,getting the chunks of all of them in one bulk get.Values with a
+	 * missing or damaged chunk are left out.
+	 */
+	private Map<String, CachedData> joinChunks(
+			final Map<String, CachedData> dataMap, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		if (dataMap == null) {
+			return null;
+		}
+		Map<String, ChunkManifest> manifests = null;
+		for (Map.Entry<String, CachedData> entry : dataMap.entrySet()) {
+			if (ChunkManifest.isManifest(entry.getValue())) {
+				if (manifests == null) {
+					manifests = new HashMap<String, ChunkManifest>();
+				}
+				manifests.put(entry.getKey(),
+						ChunkManifest.parse(entry.getValue()));
+			}
+		}
+		if (manifests == null) {
+			return dataMap;
+		}
+		String prefix = currentKeyPrefix();
+		List<String> chunkKeys = new ArrayList<String>();
+		for (Map.Entry<String, ChunkManifest> entry : manifests.entrySet()) {
+			if (entry.getValue() != null) {
+				chunkKeys.addAll(entry.getValue().getChunkKeys(
+						prefix.concat(entry.getKey())));
+			}
+		}
+		Map<String, CachedData> chunks = chunkKeys.isEmpty() ? null
+				: getMemcachedClient().get(chunkKeys, timeout,
+						CachedDataTranscoder.INSTANCE);
+		Map<String, CachedData> result = new HashMap<String, CachedData>(
+				dataMap);
+		for (Map.Entry<String, ChunkManifest> entry : manifests.entrySet()) {
+			CachedData data = null;
+			if (entry.getValue() != null && chunks != null) {
+				data = entry.getValue().join(prefix.concat(entry.getKey()),
+						chunks);
+			}
+			if (data == null) {
+				result.remove(entry.getKey());
+			} else {
+				result.put(entry.getKey(), data);
+			}
+		}
+		return result;
+	}
+
+	private boolean isLocalCacheEnabled() {
+		return (nearCache != null || offHeapCache != null) && !inNamespace();
+	}
+
+	/**
+	 * Bulk read through the local cache and the off-heap cache,only the keys
+	 * missing from both are read from memcached.
+	 */
+	private Map<String, T> getThroughLocalCache(
+			final Collection<String> keyCollections, final long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		Map<String, T> result = new HashMap<String, T>(keyCollections.size());
+		Map<String, CachedData> dataMap = new HashMap<String, CachedData>();
+		List<String> missingKeys = new ArrayList<String>();
+		for (String key : keyCollections) {
+			T value = nearCache != null ? nearCache.get(key) : null;
+			if (value != null) {
+				result.put(key, value);
+				continue;
+			}
+			CachedData data = offHeapCache != null ? offHeapCache.get(key)
+					: null;
+			if (data != null) {
+				dataMap.put(key, data);
+			} else {
+				missingKeys.add(key);
+			}
+		}
+		if (!missingKeys.isEmpty()) {
+			Map<String, CachedData> fetched = joinChunks(
+					stripKeys(getMemcachedClient().get(buildKeys(missingKeys),
+							timeout, CachedDataTranscoder.INSTANCE)), timeout);
+			if (fetched != null) {
+				for (Map.Entry<String, CachedData> entry : fetched.entrySet()) {
+					if (EnvelopeTranscoder.isAbsent(entry.getValue())) {
+						continue;
+					}
+					dataMap.put(entry.getKey(), entry.getValue());
+					if (offHeapCache != null) {
+						offHeapCache.put(entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		}
+		if (dataMap.isEmpty()) {
+			return result;
+		}
+		for (Map.Entry<String, T> entry : decodeAll(dataMap).entrySet()) {
+			result.put(entry.getKey(), entry.getValue());
+			if (nearCache != null) {
+				nearCache.put(entry.getKey(), entry.getValue(),
+						dataMap.get(entry.getKey()).getData().length);
+			}
+		}
+		return result;
+	}
+
+	private T load(final String key, final int exp,
+			final CacheLoader<T> loader, final String[] tags) throws Exception {
+		int leaseTime = getLoadLeaseTime();
+		String leaseKey = null;
+		if (leaseTime > 0) {
+			long deadline = System.currentTimeMillis() + leaseTime * 1000L;
+			while (leaseKey == null
+					&& System.currentTimeMillis() < deadline) {
+				if (acquireLease(key + LEASE_SUFFIX, leaseTime)) {
+					leaseKey = key + LEASE_SUFFIX;
+				} else {
+					CacheResult<T> result = waitForLoad(key, key
+							+ LEASE_SUFFIX, deadline);
+					if (result != null) {
+						if (result.isHit()) {
+							rememberKey(key);
+						}
+						return result.getValue();
+					}
+					// the holder released the lease without a value
+				}
+			}
+		}
+		try {
+			long start = System.currentTimeMillis();
+			T value = loader.load(key);
+			if (value != null) {
+				store(key, exp, value,
+						(int) (System.currentTimeMillis() - start), tags);
+			} else if (getAbsentExpirationTime() > 0) {
+				setAbsent(key, getAbsentExpirationTime());
+			}
+			return value;
+		} finally {
+			if (leaseKey != null) {
+				releaseLease(leaseKey);
+			}
+		}
+	}
+
+	/**
+	 * Store a loaded value,in an envelope carrying its soft expiry,load time
+	 * and tags when refreshing or early expiration is enabled or it has tags.
+	 */
+	private boolean store(final String key, final int exp, final T value,
+			final int loadMillis, final String[] tags) {
+		int refreshTime = getRefreshTime();
+		if (refreshTime <= 0 && getEarlyExpirationBeta() <= 0
+				&& tags.length == 0) {
+			return set(key, exp, value);
+		}
+		final long now = System.currentTimeMillis();
+		final long softExpireAt;
+		if (refreshTime > 0) {
+			softExpireAt = now + refreshTime * 1000L;
+		} else {
+			long ttl = expirationMillis(exp);
+			softExpireAt = ttl > 0 ? now + ttl : Long.MAX_VALUE;
+		}
+		try {
+			return execute(CacheOperation.SET, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					CachedData data = ValueEnvelope.wrap(
+							getTranscoder().encode(value), now, softExpireAt,
+							loadMillis, getTagGenerations(Arrays.asList(tags)));
+					return setData(buildKey(key), exp, data, getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
+		}
+	}
+
+	/**
+	 * Read a value stored by {@link #getOrLoad(String, int, CacheLoader)} and
+	 * schedule a refresh if it is stale or expires early.Local copies live
+	 * until the value turns stale.
+	 */
+	private CacheResult<T> getOrRefresh(final String key, final int exp,
+			final CacheLoader<T> loader, final String[] tags) {
+		recordAccess(key);
+		boolean nearCacheEnabled = isNearCacheEnabled();
+		if (nearCacheEnabled) {
+			T value = nearCache.get(key);
+			if (value != null) {
+				return CacheResult.hit(value);
+			}
+		}
+		boolean offHeapCacheEnabled = isOffHeapCacheEnabled();
+		CachedData data = offHeapCacheEnabled ? offHeapCache.get(key) : null;
+		boolean fetched = data == null;
+		if (fetched) {
+			if (!allowRequest()) {
+				return CacheResult.error(null);
+			}
+			try {
+				data = record(CacheOperation.GET, new Call<CachedData>(null) {
+					@Override
+					CachedData call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						return joinChunks(key, getMemcachedClient().get(
+								buildKey(key), CachedDataTranscoder.INSTANCE),
+								getOpTimeout());
+					}
+				});
+			} catch (TimeoutException | InterruptedException
+					| MemcachedException e) {
+				logger.error("", e);
+				return CacheResult.error(e);
+			}
+			if (data == null) {
+				return recordResult(CacheResult.<T> miss());
+			}
+			if (EnvelopeTranscoder.isAbsent(data)) {
+				return recordResult(CacheResult.<T> absent());
+			}
+			recordResult(data);
+		}
+		ValueEnvelope envelope = ValueEnvelope.unwrap(data);
+		try {
+			if (envelope != null && !isCurrent(envelope)) {
+				return CacheResult.miss();
+			}
+		} catch (TimeoutException | InterruptedException | MemcachedException e) {
+			logger.error("", e);
+			return CacheResult.error(e);
+		}
+		T value = decode(envelope != null ? envelope.getData() : data);
+		if (value == null) {
+			return CacheResult.miss();
+		}
+		long now = System.currentTimeMillis();
+		if (envelope != null
+				&& envelope.isStale(now, getEarlyExpirationBeta())) {
+			refresh(key, exp, loader, tags);
+			return CacheResult.hit(value);
+		}
+		if (nearCacheEnabled) {
+			nearCache.put(key, value, data.getData().length, localTtl(
+					getNearCacheExpirationTime(), envelope, now));
+		}
+		if (offHeapCacheEnabled && fetched) {
+			offHeapCache.put(key, data, localTtl(
+					getOffHeapCacheExpirationTime(), envelope, now));
+		}
+		return CacheResult.hit(value);
+	}
+
+	/**
+	 * Returns the time to live of a local copy of a value,which must not
+	 * outlive its soft expiry.
+	 */
+	private static long localTtl(int exp, ValueEnvelope envelope, long now) {
+		long ttl = expirationMillis(exp);
+		if (envelope != null) {
+			long remaining = envelope.getSoftExpireAt() - now;
+			ttl = ttl > 0 ? Math.min(ttl, remaining) : remaining;
+		}
+		return ttl;
+	}
+
+	/**
+	 * Reload the value on the refresh executor,unless it is already being
+	 * loaded.
+	 */
+	private void refresh(final String key, final int exp,
+			final CacheLoader<T> loader, final String[] tags) {
+		final Namespace namespace = namespaceLocal.get();
+		final String loadingKey = loadingKey(key);
+		final FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				if (namespace == null) {
+					return load(key, exp, loader, tags);
+				}
+				namespaceLocal.set(namespace);
+				try {
+					return load(key, exp, loader, tags);
+				} finally {
+					namespaceLocal.remove();
+				}
+			}
+		});
+		if (loadingTasks.putIfAbsent(loadingKey, task) != null) {
+			return;
+		}
+		try {
+			getRefreshExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						loadingTasks.remove(loadingKey, task);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			loadingTasks.remove(loadingKey, task);
+			task.cancel(false);
+		}
+	}
+
+	private ExecutorService getRefreshExecutor() {
+		ExecutorService executor = refreshExecutor;
+		if (executor == null) {
+			synchronized (this) {
+				executor = refreshExecutor;
+				if (executor == null) {
+					executor = createRefreshExecutor();
+					refreshExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Loads of the same key in different namespaces are distinct.
+	 */
+	private String loadingKey(String key) {
+		Namespace namespace = namespaceLocal.get();
+		return namespace == null ? key : namespace.keyPrefix.concat(key);
+	}
+
+	private boolean acquireLease(final String leaseKey, final int leaseTime) {
+		return execute(CacheOperation.ADD, new Call<Boolean>(true) {
+			@Override
+			Boolean call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return getMemcachedClient().add(buildKey(leaseKey), leaseTime,
+						Boolean.TRUE.toString());
+			}
+		});
+	}
+
+	private void releaseLease(final String leaseKey) {
+		execute(CacheOperation.DELETE, new Call<Void>(null) {
+			@Override
+			Void call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				getMemcachedClient().delete(buildKey(leaseKey));
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Poll memcached until the lease holder has stored the value or the
+	 * absent sentinel.
+	 * 
+	 * @return the result,or null if the lease was released without a value
+	 *         or the deadline has passed
+	 */
+	private CacheResult<T> waitForLoad(String key, String leaseKey,
+			long deadline) throws InterruptedException {
+		while (System.currentTimeMillis() < deadline) {
+			Thread.sleep(LEASE_POLL_INTERVAL);
+			// check the lease first,a holder stores the value before releasing
+			boolean held = isLeaseHeld(leaseKey);
+			CacheResult<T> result = fetch(key, getOpTimeout(), false);
+			if (result.isHit() || result.isAbsent()) {
+				return result;
+			}
+			if (!held) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the lease exists,or true if memcached cannot tell.
+	 */
+	private boolean isLeaseHeld(final String leaseKey) {
+		return execute(CacheOperation.GET, new Call<Boolean>(true) {
+			@Override
+			Boolean call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return getMemcachedClient().get(buildKey(leaseKey),
+						CachedDataTranscoder.INSTANCE) != null;
+			}
+		});
+	}
+
+	/**
+	 * Returns how many reads were served by the local cache.
+	 * 
+	 * @return
+	 */
+	public long getNearCacheHitCount() {
+		return nearCache == null ? 0 : nearCache.getHitCount();
+	}
+
+	/**
+	 * Returns how many reads missed the local cache and went to memcached.
+	 * 
+	 * @return
+	 */
+	public long getNearCacheMissCount() {
+		return nearCache == null ? 0 : nearCache.getMissCount();
+	}
 
-	@PostConstruct
-	private void setKeyProvider() {
-		getMemcachedClient().setKeyProvider(
-				new DefaultKeyProvider(this.getClass().getName()));
+	/**
+	 * Returns how many reads missing the local cache were served by the
+	 * off-heap cache.
+	 * 
+	 * @return
+	 */
+	public long getOffHeapCacheHitCount() {
+		return offHeapCache == null ? 0 : offHeapCache.getHitCount();
+	}
+
+	/**
+	 * Returns how many reads missed the off-heap cache and went to memcached.
+	 * 
+	 * @return
+	 */
+	public long getOffHeapCacheMissCount() {
+		return offHeapCache == null ? 0 : offHeapCache.getMissCount();
+	}
+
+	/**
+	 * Returns the metrics of this cache,or null if they are disabled,see
+	 * {@link #isMetricsEnabled()}.
+	 * 
+	 * @return
+	 */
+	public CacheMetrics getCacheMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the circuit breaker of this cache,or null if it has none,see
+	 * {@link #createCircuitBreaker()}.
+	 * 
+	 * @return
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Returns the hottest keys of this cache with their estimated number of
+	 * recent sampled reads,the hottest first.Empty if hot key detection is
+	 * disabled,see {@link #getHotKeyCount()}.
+	 * 
+	 * @return
+	 */
+	public Map<String, Long> getHotKeys() {
+		if (hotKeyDetector == null) {
+			return new HashMap<String, Long>();
+		}
+		return hotKeyDetector.getHotKeys();
 	}
 
-	private class DefaultKeyProvider implements KeyProvider {
-		private String className;
+	/**
+	 * Write the values of the hottest keys to a snapshot file.
+	 * 
+	 * @see #getHotKeys()
+	 * @see #exportSnapshot(Path, Collection)
+	 * @param file
+	 * @param count
+	 *            maximum number of keys
+	 * @return
+	 */
+	public int exportHotKeys(final Path file, final int count) {
+		List<String> keys = new ArrayList<String>(getHotKeys().keySet());
+		return exportSnapshot(file,
+				keys.subList(0, Math.min(count, keys.size())));
+	}
 
-		public DefaultKeyProvider(String className) {
-			this.className = className;
+	/**
+	 * Write the values the keys have in memcached to a snapshot file,which
+	 * {@link #importSnapshot(Path)} replays.The values are read in batches of
+	 * {@link #getSnapshotBatchSize()} keys,missing keys are skipped.The
+	 * previous snapshot is only replaced once all the values are written.
+	 * 
+	 * Memcached does not tell when an item expires.The expiry written with a
+	 * value stored by getOrLoad or setTagged without a refresh time is the
+	 * one it carries,other values are given {@link #getExpirationTime()} from
+	 * when they were stored if known,otherwise from now.
+	 * 
+	 * @param file
+	 * @param keyCollections
+	 * @return the number of values written,or -1 if the export failed
+	 */
+	public int exportSnapshot(final Path file,
+			final Collection<String> keyCollections) {
+		List<String> keys = new ArrayList<String>(keyCollections);
+		int batchSize = getSnapshotBatchSize();
+		long now = System.currentTimeMillis();
+		try (SnapshotWriter writer = new SnapshotWriter(file)) {
+			for (int i = 0; i < keys.size(); i += batchSize) {
+				List<String> batch = keys.subList(i,
+						Math.min(i + batchSize, keys.size()));
+				Map<String, CachedData> dataMap = getJoined(batch);
+				if (dataMap == null) {
+					return -1;
+				}
+				for (Map.Entry<String, CachedData> entry : dataMap.entrySet()) {
+					if (!EnvelopeTranscoder.isAbsent(entry.getValue())) {
+						writer.write(entry.getKey(), entry.getValue(),
+								expireAt(entry.getValue(), now));
+					}
+				}
+			}
+			writer.commit();
+			logger.info("Exported " + writer.getCount() + " items of "
+					+ getClass().getName() + " to " + file);
+			return writer.getCount();
+		} catch (IOException e) {
+			logger.error("", e);
+			return -1;
 		}
+	}
 
-		@Override
-		public String process(String key) {
-			return new StringBuilder(32).append(this.className).append(":")
-					.append(key).toString();
+	/**
+	 * Replay a snapshot written by {@link #exportSnapshot(Path, Collection)}
+	 * into memcached,and into the local and off-heap caches when they are
+	 * enabled.The items are replayed in batches of
+	 * {@link #getSnapshotBatchSize()} by {@link #getSnapshotImportThreads()}
+	 * threads.
+	 * 
+	 * Items are only added to keys without a value,so values other nodes
+	 * wrote after the export are kept,and only those added are copied to the
+	 * local caches.Without local caches the adds do not wait for replies.
+	 * Items keep the expiry they were exported with,expired items are
+	 * skipped.
+	 * 
+	 * @param file
+	 * @return the number of items replayed,or -1 if the snapshot could not
+	 *         be read
+	 */
+	public int importSnapshot(final Path file) {
+		int threads = getSnapshotImportThreads();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+				threads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+						threads * 2), new NamedThreadFactory(getClass()
+						.getSimpleName() + "-snapshot"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		final AtomicInteger replayed = new AtomicInteger();
+		try (SnapshotReader reader = new SnapshotReader(file)) {
+			long start = System.currentTimeMillis();
+			String keyPrefix = currentKeyPrefix();
+			boolean local = !inNamespace()
+					&& (nearCache != null || offHeapCache != null);
+			int batchSize = getSnapshotBatchSize();
+			Map<String, CachedData> batch = new HashMap<String, CachedData>();
+			Map<String, Long> expiries = new HashMap<String, Long>();
+			while (reader.next()) {
+				long expireAt = reader.getExpireAt();
+				if (expireAt != 0 && expireAt <= System.currentTimeMillis()) {
+					continue;
+				}
+				batch.put(reader.getKey(), reader.getData());
+				expiries.put(reader.getKey(), expireAt);
+				if (batch.size() >= batchSize) {
+					executor.execute(replay(batch, expiries, keyPrefix, local,
+							replayed));
+					batch = new HashMap<String, CachedData>();
+					expiries = new HashMap<String, Long>();
+				}
+			}
+			if (!batch.isEmpty()) {
+				executor.execute(replay(batch, expiries, keyPrefix, local,
+						replayed));
+			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			logger.info("Imported " + replayed.get() + " items of "
+					+ getClass().getName() + " from " + file + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+			return replayed.get();
+		} catch (IOException | InterruptedException e) {
+			logger.error("", e);
+			return -1;
+		} finally {
+			executor.shutdown();
 		}
 	}
 
-	private static final Logger logger = LoggerFactory
-			.getLogger(BaseCache.class);
+	/**
+	 * @param expiries
+	 *            when the items expire,in milliseconds,0 for never
+	 * @param local
+	 *            whether to wait for the adds and copy the added items to
+	 *            the local caches
+	 */
+	private Runnable replay(final Map<String, CachedData> batch,
+			final Map<String, Long> expiries, final String keyPrefix,
+			final boolean local, final AtomicInteger replayed) {
+		final Call<Void> call = new Call<Void>(null) {
+			@Override
+			Void call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				Map<String, CachedData> added = new HashMap<String, CachedData>(
+						batch.size());
+				for (Map.Entry<String, CachedData> entry : batch.entrySet()) {
+					String key = entry.getKey();
+					int exp = expiration(expiries.get(key));
+					if (exp < 0) {
+						continue;
+					}
+					rememberKey(key);
+					if (!local) {
+						addDataWithNoReply(keyPrefix.concat(key), exp,
+								entry.getValue());
+						replayed.incrementAndGet();
+					} else if (addData(keyPrefix.concat(key), exp,
+							entry.getValue(), getOpTimeout())) {
+						added.put(key, entry.getValue());
+						replayed.incrementAndGet();
+					}
+				}
+				if (!added.isEmpty()) {
+					fillLocal(added, expiries);
+				}
+				return null;
+			}
+		};
+		return new Runnable() {
+			@Override
+			public void run() {
+				execute(CacheOperation.ADD, call);
+			}
+		};
+	}
+
+	/**
+	 * Bulk get the raw items with the values of chunked items joined,or null
+	 * on error.
+	 */
+	private Map<String, CachedData> getJoined(final List<String> keys) {
+		return execute(CacheOperation.GET_MULTI,
+				new Call<Map<String, CachedData>>(null) {
+					@Override
+					Map<String, CachedData> call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						Map<String, CachedData> result = joinChunks(
+								stripKeys(getMemcachedClient().get(
+										buildKeys(keys),
+										CachedDataTranscoder.INSTANCE)),
+								getOpTimeout());
+						return result != null ? result : Collections
+								.<String, CachedData> emptyMap();
+					}
+				});
+	}
+
+	/**
+	 * Returns when the item expires,in milliseconds,or 0 if it never does.
+	 * 
+	 * @see #exportSnapshot(Path, Collection)
+	 */
+	private long expireAt(CachedData data, long now) {
+		ValueEnvelope envelope = ValueEnvelope.unwrap(data);
+		if (envelope != null && getRefreshTime() <= 0) {
+			long softExpireAt = envelope.getSoftExpireAt();
+			return softExpireAt == Long.MAX_VALUE ? 0 : softExpireAt;
+		}
+		long ttl = expirationMillis(getExpirationTime());
+		if (ttl <= 0) {
+			return 0;
+		}
+		return (envelope != null ? envelope.getCreatedAt() : now) + ttl;
+	}
+
+	/**
+	 * Convert when an item expires to a memcached expiration time.
+	 * 
+	 * @return the expiration time,or -1 if the item has expired
+	 */
+	private static int expiration(long expireAt) {
+		if (expireAt == 0) {
+			return 0;
+		}
+		long remaining = (expireAt - System.currentTimeMillis() + 999) / 1000;
+		if (remaining <= 0) {
+			return -1;
+		}
+		return remaining <= MAX_RELATIVE_EXPIRATION ? (int) remaining
+				: (int) (expireAt / 1000);
+	}
+
+	/**
+	 * Copy the replayed items to the local and off-heap caches,they do not
+	 * outlive their expiry.
+	 */
+	private void fillLocal(Map<String, CachedData> batch,
+			Map<String, Long> expiries) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		long now = System.currentTimeMillis();
+		if (offHeapCache != null) {
+			for (Map.Entry<String, CachedData> entry : batch.entrySet()) {
+				offHeapCache.put(entry.getKey(), entry.getValue(), localTtl(
+						getOffHeapCacheExpirationTime(), entry.getValue(),
+						expiries.get(entry.getKey()), now));
+			}
+		}
+		if (nearCache != null) {
+			for (Map.Entry<String, T> entry : decodeAll(batch).entrySet()) {
+				CachedData data = batch.get(entry.getKey());
+				nearCache.put(entry.getKey(), entry.getValue(),
+						data.getData().length, localTtl(
+								getNearCacheExpirationTime(), data,
+								expiries.get(entry.getKey()), now));
+			}
+		}
+	}
+
+	/**
+	 * Returns the time to live of a local copy of a replayed item.
+	 */
+	private static long localTtl(int exp, CachedData data, long expireAt,
+			long now) {
+		long ttl = localTtl(exp, ValueEnvelope.unwrap(data), now);
+		if (expireAt == 0) {
+			return ttl;
+		}
+		long remaining = Math.max(1, expireAt - now);
+		return ttl > 0 ? Math.min(ttl, remaining) : remaining;
+	}
 
 	/**
 	 * Set the merge factor,this factor determins how many 'get' commands would
@@ -194,27 +2277,75 @@ public abstract class BaseCache<T> {
 	 *            time,throw TimeoutException
 	 * @param transcoder
 	 *            The value's transcoder
-	 * @return
-	 * @throws TimeoutException
-	 * @throws InterruptedException
-	 * @throws MemcachedException
+	 * @return the value,null on a miss and on errors
+	 * @see #fetch(String, long)
 	 */
 	public T get(final String key, final long timeout) {
-		try {
-			return getMemcachedClient().get(key, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+		return fetch(key, timeout).getValue();
 	}
 
+	/**
+	 * Get value by key
+	 * 
+	 * @param key
+	 * @return the value,null on a miss and on errors
+	 * @see #fetch(String)
+	 */
 	public T get(final String key) {
-		try {
-			return getMemcachedClient().get(key);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
+		return fetch(key).getValue();
+	}
+
+	/**
+	 * Get value by key,telling a miss from a failure of memcached.Callers can
+	 * shed load or serve degraded data on errors instead of reloading the
+	 * value like on a miss.
+	 * 
+	 * @param key
+	 * @param timeout
+	 *            Operation timeout
+	 * @return
+	 */
+	public CacheResult<T> fetch(final String key, final long timeout) {
+		return fetch(key, timeout, true);
+	}
+
+	/**
+	 * Get value by key,telling a miss from a failure of memcached.
+	 * 
+	 * @see #fetch(String, long)
+	 * @param key
+	 * @return
+	 */
+	public CacheResult<T> fetch(final String key) {
+		return fetch(key, getOpTimeout(), true);
+	}
+
+	/**
+	 * @param filtered
+	 *            whether a key missing from the key filter is absent without
+	 *            asking memcached
+	 */
+	private CacheResult<T> fetch(final String key, final long timeout,
+			final boolean filtered) {
+		T value = getHotKeyCopy(key);
+		if (value != null) {
+			return recordResult(CacheResult.hit(value));
+		}
+		if (filtered && isKnownAbsent(key)) {
+			return recordResult(CacheResult.<T> absent());
 		}
+		return execute(CacheOperation.GET, new Call<CacheResult<T>>(null) {
+			@Override
+			CacheResult<T> call() throws TimeoutException,
+					InterruptedException, MemcachedException {
+				return recordResult(getCached(key, timeout));
+			}
+
+			@Override
+			CacheResult<T> fallback(Exception error) {
+				return CacheResult.error(error);
+			}
+		});
 	}
 
 	/**
@@ -234,12 +2365,14 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public GetsResponse<T> gets(final String key) {
-		try {
-			return getMemcachedClient().gets(key);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+		recordAccess(key);
+		return execute(CacheOperation.GETS, new Call<GetsResponse<T>>(null) {
+			@Override
+			GetsResponse<T> call() throws TimeoutException,
+					InterruptedException, MemcachedException {
+				return recordResult(getsJoined(key, getOpTimeout()));
+			}
+		});
 	}
 
 	/**
@@ -253,12 +2386,14 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public GetsResponse<T> gets(final String key, final long timeout) {
-		try {
-			return getMemcachedClient().gets(key, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+		recordAccess(key);
+		return execute(CacheOperation.GETS, new Call<GetsResponse<T>>(null) {
+			@Override
+			GetsResponse<T> call() throws TimeoutException,
+					InterruptedException, MemcachedException {
+				return recordResult(getsJoined(key, timeout));
+			}
+		});
 	}
 
 	/**
@@ -271,12 +2406,30 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public Map<String, T> get(final Collection<String> keyCollections) {
-		try {
-			return getMemcachedClient().get(keyCollections);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
+		recordAccess(keyCollections);
+		final Collection<String> keys = filterKeys(keyCollections);
+		if (keys.isEmpty()) {
+			return recordResult(keyCollections.size(),
+					new HashMap<String, T>());
 		}
+		return execute(CacheOperation.GET_MULTI,
+				new Call<Map<String, T>>(null) {
+					@Override
+					Map<String, T> call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						Map<String, T> result;
+						if (isLocalCacheEnabled()) {
+							result = getThroughLocalCache(keys, getOpTimeout());
+						} else {
+							result = decodeAll(joinChunks(
+									stripKeys(getMemcachedClient().get(
+											buildKeys(keys),
+											CachedDataTranscoder.INSTANCE)),
+									getOpTimeout()));
+						}
+						return recordResult(keyCollections.size(), result);
+					}
+				});
 	}
 
 	/**
@@ -291,12 +2444,30 @@ public abstract class BaseCache<T> {
 	 */
 	public Map<String, T> get(final Collection<String> keyCollections,
 			final long timeout) {
-		try {
-			return getMemcachedClient().get(keyCollections, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
+		recordAccess(keyCollections);
+		final Collection<String> keys = filterKeys(keyCollections);
+		if (keys.isEmpty()) {
+			return recordResult(keyCollections.size(),
+					new HashMap<String, T>());
 		}
+		return execute(CacheOperation.GET_MULTI,
+				new Call<Map<String, T>>(null) {
+					@Override
+					Map<String, T> call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						Map<String, T> result;
+						if (isLocalCacheEnabled()) {
+							result = getThroughLocalCache(keys, timeout);
+						} else {
+							result = decodeAll(joinChunks(
+									stripKeys(getMemcachedClient().get(
+											buildKeys(keys), timeout,
+											CachedDataTranscoder.INSTANCE)),
+									timeout));
+						}
+						return recordResult(keyCollections.size(), result);
+					}
+				});
 	}
 
 	/**
@@ -317,32 +2488,319 @@ public abstract class BaseCache<T> {
 	 */
 	public Map<String, GetsResponse<T>> gets(
 			final Collection<String> keyCollections) {
+		recordAccess(keyCollections);
+		return execute(CacheOperation.GETS_MULTI,
+				new Call<Map<String, GetsResponse<T>>>(null) {
+					@Override
+					Map<String, GetsResponse<T>> call()
+							throws TimeoutException, InterruptedException,
+							MemcachedException {
+						return recordResult(keyCollections.size(),
+								stripKeys(getMemcachedClient().<T> gets(
+										buildKeys(keyCollections),
+										getTranscoder())));
+					}
+				});
+	}
+
+	/**
+	 * @see #gets(Collection, long, Transcoder)
+	 * @param <T>
+	 * @param keyCollections
+	 * @param timeout
+	 * @return
+	 * @throws TimeoutException
+	 * @throws InterruptedException
+	 * @throws MemcachedException
+	 */
+	public Map<String, GetsResponse<T>> gets(
+			final Collection<String> keyCollections, final long timeout) {
+		recordAccess(keyCollections);
+		return execute(CacheOperation.GETS_MULTI,
+				new Call<Map<String, GetsResponse<T>>>(null) {
+					@Override
+					Map<String, GetsResponse<T>> call()
+							throws TimeoutException, InterruptedException,
+							MemcachedException {
+						return recordResult(keyCollections.size(),
+								stripKeys(getMemcachedClient().<T> gets(
+										buildKeys(keyCollections), timeout,
+										getTranscoder())));
+					}
+				});
+	}
+
+	/**
+	 * Get value by key,and on a miss load it with the loader and store it with
+	 * the default expiration time.
+	 * 
+	 * @see #getOrLoad(String, int, CacheLoader)
+	 * @param key
+	 * @param loader
+	 * @return
+	 */
+	public T getOrLoad(final String key, final CacheLoader<T> loader) {
+		return getOrLoad(key, getExpirationTime(), loader);
+	}
+
+	/**
+	 * Remember that the key has no value.Until the sentinel expires or is
+	 * overwritten,{@link #fetch(String)} reports the key as
+	 * {@link CacheResult.Status#ABSENT absent} and {@link #get(String)}
+	 * returns null,both without decoding anything.
+	 * 
+	 * @param key
+	 * @param exp
+	 *            An expiration time, in seconds,should be short
+	 * @return
+	 */
+	public boolean setAbsent(final String key, final int exp) {
 		try {
-			return getMemcachedClient().gets(keyCollections);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
+			return execute(CacheOperation.SET, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().set(buildKey(key), exp,
+							EnvelopeTranscoder.absent(),
+							CachedDataTranscoder.INSTANCE);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
+		}
+	}
+
+	/**
+	 * Store the value with tags,so that {@link #invalidateTag(String)} of any
+	 * of them invalidates it.The value records the generation of each tag,a
+	 * read finding that one has changed since treats the value as missing.
+	 * Tags are checked by get,fetch,getOrLoad and bulk gets,not by gets and
+	 * getAndTouch.Tags are shared by all the caches of a memcached cluster.
+	 * 
+	 * @param key
+	 * @param exp
+	 *            An expiration time, in seconds. Can be up to 30 days. After 30
+	 *            days, is treated as a unix timestamp of an exact date.
+	 * @param value
+	 * @param tags
+	 * @return
+	 */
+	public boolean setTagged(final String key, final int exp, final T value,
+			final String... tags) {
+		if (value == null) {
+			return false;
+		}
+		return store(key, exp, value, 0, tags);
+	}
+
+	/**
+	 * Invalidate all the values stored with the tag,by bumping its generation
+	 * instead of deleting them.Local copies of this cache are dropped at
+	 * once,other nodes see the new generation within
+	 * {@link #getTagGenerationCacheTime()}.
+	 * 
+	 * @param tag
+	 * @return
+	 */
+	public boolean invalidateTag(final String tag) {
+		try {
+			return execute(CacheOperation.INCR, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					incrCounter(getMemcachedClient(), TAG_PREFIX.concat(tag), 1,
+							System.currentTimeMillis(), false);
+					return true;
+				}
+			});
+		} finally {
+			if (tagGenerations != null) {
+				tagGenerations.invalidate(tag);
+			}
+			invalidateAllLocal();
+		}
+	}
+
+	/**
+	 * Get value by key,and on a miss load it with the loader and store it.Only
+	 * one thread per key in this JVM runs the loader,concurrent callers wait
+	 * for its result.If {@link #getLoadLeaseTime()} is positive,a memcached
+	 * lease additionally makes the other nodes wait for the value instead of
+	 * loading it themselves.If {@link #getRefreshTime()} is positive,a stale
+	 * value is returned at once and reloaded in the background.While memcached
+	 * fails,{@link #getMaxReloadsOnError()} limits the callers running the
+	 * loader.If {@link #getAbsentExpirationTime()} is positive,a null loaded
+	 * value is remembered for that time.
+	 * 
+	 * @param key
+	 * @param exp
+	 *            An expiration time, in seconds. Can be up to 30 days. After 30
+	 *            days, is treated as a unix timestamp of an exact date.
+	 * @param loader
+	 *            computes the value on a miss
+	 * @return the cached or loaded value,null if the loader returns null or
+	 *         fails
+	 */
+	public T getOrLoad(final String key, final int exp,
+			final CacheLoader<T> loader) {
+		return getOrLoad(key, exp, loader, NO_TAGS);
+	}
+
+	/**
+	 * Like {@link #getOrLoad(String, int, CacheLoader)},the loaded value is
+	 * stored with the tags.
+	 * 
+	 * @see #setTagged(String, int, Object, String...)
+	 * @param key
+	 * @param exp
+	 * @param loader
+	 * @param tags
+	 * @return
+	 */
+	public T getOrLoad(final String key, final int exp,
+			final CacheLoader<T> loader, final String... tags) {
+		boolean enveloped = getRefreshTime() > 0
+				|| getEarlyExpirationBeta() > 0;
+		// the key filter may not know keys added since it was built
+		CacheResult<T> result = enveloped ? getOrRefresh(key, exp, loader,
+				tags) : fetch(key, getOpTimeout(), false);
+		if (result.isHit() && isKnownAbsent(key)) {
+			// written by another node since the filter was built
+			rememberKey(key);
+		}
+		if (result.isHit() || result.isAbsent()) {
+			return result.getValue();
+		}
+		if (result.isError()) {
+			if (reloadLimiter != null && !reloadLimiter.tryAcquire()) {
+				return null;
+			}
+			try {
+				return loadOnce(key, exp, loader, tags);
+			} finally {
+				if (reloadLimiter != null) {
+					reloadLimiter.release();
+				}
+			}
+		}
+		return loadOnce(key, exp, loader, tags);
+	}
+
+	/**
+	 * Run the loader of the key,unless another thread of this JVM is already
+	 * loading it,in which case wait for its result.
+	 */
+	private T loadOnce(final String key, final int exp,
+			final CacheLoader<T> loader, final String[] tags) {
+		String loadingKey = loadingKey(key);
+		FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return load(key, exp, loader, tags);
+			}
+		});
+		FutureTask<T> loadingTask = loadingTasks.putIfAbsent(loadingKey, task);
+		if (loadingTask == null) {
+			loadingTask = task;
+			try {
+				task.run();
+			} finally {
+				loadingTasks.remove(loadingKey, task);
+			}
+		}
+
+		try {
+			return loadingTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error("", e);
+			return null;
+		} catch (ExecutionException e) {
+			logger.error("", e.getCause());
+			return null;
+		} catch (CancellationException e) {
 			logger.error("", e);
 			return null;
 		}
 	}
 
 	/**
-	 * @see #gets(Collection, long, Transcoder)
-	 * @param <T>
-	 * @param keyCollections
-	 * @param timeout
+	 * Returns the asynchronous view of this cache.Its operations run on the
+	 * executor created by {@link #createAsyncExecutor()} and return a
+	 * {@link CacheFuture} at once.
+	 * 
+	 * @return
+	 */
+	public AsyncCache<T> async() {
+		AsyncCache<T> cache = asyncCache;
+		if (cache == null) {
+			synchronized (this) {
+				cache = asyncCache;
+				if (cache == null) {
+					asyncExecutor = createAsyncExecutor();
+					cache = new AsyncCache<T>(this, asyncExecutor);
+					asyncCache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the counters of this cache whose increments are buffered in
+	 * memory and flushed to memcached in batches.Use them for counters
+	 * incremented so often that a round trip per increment is too much,and
+	 * whose readers can tolerate a lag of one flush interval.
+	 * 
+	 * @see #getCounterFlushInterval()
+	 * @return
+	 */
+	public BufferedCounters counters() {
+		BufferedCounters counters = bufferedCounters;
+		if (counters == null) {
+			synchronized (this) {
+				counters = bufferedCounters;
+				if (counters == null) {
+					NamedThreadFactory threadFactory = new NamedThreadFactory(
+							getClass().getSimpleName() + "-counters");
+					counterExecutor = Executors
+							.newSingleThreadScheduledExecutor(threadFactory);
+					counters = new BufferedCounters(this, counterExecutor,
+							getCounterFlushInterval(),
+							getCounterFlushThreshold());
+					bufferedCounters = counters;
+				}
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Returns a counter of this cache split into shards,so that the
+	 * increments of a hot counter are spread over the memcached nodes.
+	 *
+	 * @param key
+	 * @param shardCount
+	 *            number of shards of a new counter,the number of an existing
+	 *            counter is kept,see {@link ShardedCounter#reshard(int)}
+	 * @return
+	 */
+	public ShardedCounter shardedCounter(String key, int shardCount) {
+		return new ShardedCounter(this, key, shardCount,
+				ShardedCounter.Selection.RANDOM);
+	}
+
+	/**
+	 * @see #shardedCounter(String, int)
+	 * @param key
+	 * @param shardCount
+	 * @param selection
+	 *            how the shard of an increment is chosen
 	 * @return
-	 * @throws TimeoutException
-	 * @throws InterruptedException
-	 * @throws MemcachedException
 	 */
-	public Map<String, GetsResponse<T>> gets(
-			final Collection<String> keyCollections, final long timeout) {
-		try {
-			return getMemcachedClient().gets(keyCollections, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+	public ShardedCounter shardedCounter(String key, int shardCount,
+			ShardedCounter.Selection selection) {
+		return new ShardedCounter(this, key, shardCount, selection);
 	}
 
 	/**
@@ -370,10 +2828,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().set(key, exp, value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.SET, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return setData(buildKey(key), exp,
+							objectTranscoder().encode(value), getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -382,10 +2847,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().set(key, getExpirationTime(), value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.SET, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return setData(buildKey(key), getExpirationTime(),
+							objectTranscoder().encode(value), getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -398,10 +2870,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().set(key, exp, value, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.SET, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return setData(buildKey(key), exp,
+							objectTranscoder().encode(value), timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -428,9 +2907,18 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().setWithNoReply(key, exp, value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.SET, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					setDataWithNoReply(buildKey(key), exp,
+							objectTranscoder().encode(value));
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -439,10 +2927,18 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient()
-					.setWithNoReply(key, getExpirationTime(), value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.SET, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					setDataWithNoReply(buildKey(key), getExpirationTime(),
+							objectTranscoder().encode(value));
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -468,10 +2964,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().add(key, exp, value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.ADD, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().add(buildKey(key), exp, value,
+							objectTranscoder());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -480,10 +2983,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().add(key, getExpirationTime(), value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.ADD, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().add(buildKey(key),
+							getExpirationTime(), value, objectTranscoder());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -504,10 +3014,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().add(key, exp, value, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.ADD, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().add(buildKey(key), exp, value,
+							objectTranscoder(), timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -533,9 +3050,18 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().addWithNoReply(key, exp, value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.ADD, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					getMemcachedClient().addWithNoReply(buildKey(key), exp,
+							value, objectTranscoder());
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -544,10 +3070,18 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient()
-					.addWithNoReply(key, getExpirationTime(), value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.ADD, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					getMemcachedClient().addWithNoReply(buildKey(key),
+							getExpirationTime(), value, objectTranscoder());
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -573,10 +3107,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().replace(key, exp, value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.REPLACE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().replace(buildKey(key), exp,
+							value, objectTranscoder());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -585,11 +3125,17 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient()
-					.replace(key, getExpirationTime(), value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.REPLACE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient()
+							.replace(buildKey(key), getExpirationTime(), value,
+									objectTranscoder());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -610,10 +3156,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().replace(key, exp, value, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.REPLACE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().replace(buildKey(key),
+							exp, value, objectTranscoder(), timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -639,9 +3191,17 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().replaceWithNoReply(key, exp, value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.REPLACE, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().replaceWithNoReply(buildKey(key),
+							exp, value, objectTranscoder());
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -650,10 +3210,17 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().replaceWithNoReply(key, getExpirationTime(),
-					value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.REPLACE, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().replaceWithNoReply(buildKey(key),
+							getExpirationTime(), value, objectTranscoder());
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -671,10 +3238,15 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().append(key, value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.APPEND, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().append(buildKey(key), value);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -695,10 +3267,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().append(key, value, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.APPEND, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().append(buildKey(key), value,
+							timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -716,9 +3294,17 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().appendWithNoReply(key, value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.APPEND, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().appendWithNoReply(buildKey(key),
+							value);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -736,10 +3322,15 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().prepend(key, value);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.PREPEND, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().prepend(buildKey(key), value);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -760,10 +3351,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().prepend(key, value, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.PREPEND, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().prepend(buildKey(key), value,
+							timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -783,9 +3380,17 @@ public abstract class BaseCache<T> {
 			return;
 
 		try {
-			getMemcachedClient().prependWithNoReply(key, value);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.PREPEND, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().prependWithNoReply(buildKey(key),
+							value);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -806,10 +3411,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().cas(key, exp, value, cas);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().cas(buildKey(key), exp, value,
+							objectTranscoder(), cas);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -837,10 +3448,16 @@ public abstract class BaseCache<T> {
 			return false;
 
 		try {
-			return getMemcachedClient().cas(key, exp, value, timeout, cas);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().cas(buildKey(key),
+							exp, value, objectTranscoder(), timeout, cas);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -864,12 +3481,19 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public boolean cas(final String key, final int exp,
-			GetsResponse<T> getsReponse, final CASOperation<T> operation) {
+			final GetsResponse<T> getsReponse,
+			final CASOperation<T> operation) {
 		try {
-			return getMemcachedClient().cas(key, exp, getsReponse, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return cas(key, exp, getsReponse, operation,
+							getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -884,13 +3508,18 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public boolean cas(final String key, GetsResponse<T> getsResponse,
+	public boolean cas(final String key, final GetsResponse<T> getsResponse,
 			final CASOperation<T> operation) {
 		try {
-			return getMemcachedClient().cas(key, getsResponse, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return cas(key, 0, getsResponse, operation, getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -908,10 +3537,15 @@ public abstract class BaseCache<T> {
 	public boolean cas(final String key, final int exp,
 			final CASOperation<T> operation) {
 		try {
-			return getMemcachedClient().cas(key, exp, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return cas(key, exp, null, operation, getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -927,11 +3561,67 @@ public abstract class BaseCache<T> {
 	 */
 	public boolean cas(final String key, final CASOperation<T> operation) {
 		try {
-			return getMemcachedClient().cas(key, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.CAS, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return cas(key, 0, null, operation, getOpTimeout());
+				}
+			});
+		} finally {
+			invalidateLocal(key);
+		}
+	}
+
+	/**
+	 * Store the value the operation makes of the current one with cas,reading
+	 * the current value again after a lost cas until the operation runs out
+	 * of tries.The value of a chunked item is joined before the operation
+	 * sees it,the new value is stored as a single item.
+	 * 
+	 * @param getsResponse
+	 *            the current value,or null to read it
+	 * @return false if the key has no value or every cas was lost
+	 */
+	private boolean cas(String key, int exp, GetsResponse<T> getsResponse,
+			CASOperation<T> operation, long timeout) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		String memcachedKey = buildKey(key);
+		GetsResponse<T> response = getsResponse;
+		for (int tries = 0; tries < operation.getMaxTries(); tries++) {
+			if (response == null) {
+				response = getsJoined(key, timeout);
+				if (response == null) {
+					return false;
+				}
+			}
+			T value = operation.getNewValue(response.getCas(),
+					response.getValue());
+			if (getMemcachedClient().cas(memcachedKey, exp, value,
+					getTranscoder(), timeout, response.getCas())) {
+				return true;
+			}
+			response = null;
 		}
+		return false;
+	}
+
+	/**
+	 * Gets the item with the value of a chunked item joined,or null if the
+	 * key has no value or a chunk is missing.
+	 */
+	private GetsResponse<T> getsJoined(String key, long timeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		GetsResponse<CachedData> response = getMemcachedClient().gets(
+				buildKey(key), timeout, CachedDataTranscoder.INSTANCE);
+		if (response == null) {
+			return null;
+		}
+		CachedData data = joinChunks(key, response.getValue(), timeout);
+		if (data == null) {
+			return null;
+		}
+		return new GetsResponse<T>(response.getCas(), decode(data));
 	}
 
 	/**
@@ -945,12 +3635,21 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public void casWithNoReply(final String key, GetsResponse<T> getsResponse,
+	public void casWithNoReply(final String key,
+			final GetsResponse<T> getsResponse,
 			final CASOperation<T> operation) {
 		try {
-			getMemcachedClient().casWithNoReply(key, getsResponse, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.CAS, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().casWithNoReply(buildKey(key),
+							getsResponse, operation);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -967,12 +3666,20 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public void casWithNoReply(final String key, final int exp,
-			GetsResponse<T> getsReponse, final CASOperation<T> operation) {
+			final GetsResponse<T> getsReponse,
+			final CASOperation<T> operation) {
 		try {
-			getMemcachedClient().casWithNoReply(key, exp, getsReponse,
-					operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.CAS, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().casWithNoReply(buildKey(key), exp,
+							getsReponse, operation);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -989,9 +3696,17 @@ public abstract class BaseCache<T> {
 	public void casWithNoReply(final String key, final int exp,
 			final CASOperation<T> operation) {
 		try {
-			getMemcachedClient().casWithNoReply(key, exp, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.CAS, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().casWithNoReply(buildKey(key), exp,
+							operation);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1006,9 +3721,17 @@ public abstract class BaseCache<T> {
 	 */
 	public void casWithNoReply(final String key, final CASOperation<T> operation) {
 		try {
-			getMemcachedClient().casWithNoReply(key, operation);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.CAS, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().casWithNoReply(buildKey(key),
+							operation);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1024,12 +3747,18 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 * @since 1.3.2
 	 */
-	public boolean delete(final String key, long opTimeout) {
+	public boolean delete(final String key, final long opTimeout) {
 		try {
-			return getMemcachedClient().delete(key, opTimeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.DELETE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().delete(buildKey(key),
+							opTimeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1048,12 +3777,19 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 * @since 1.3.2
 	 */
-	public boolean delete(final String key, long cas, long opTimeout) {
+	public boolean delete(final String key, final long cas,
+			final long opTimeout) {
 		try {
-			return getMemcachedClient().delete(key, cas, opTimeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.DELETE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().delete(buildKey(key), cas,
+							opTimeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1072,13 +3808,16 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public boolean touch(final String key, int exp, long opTimeout) {
-		try {
-			return getMemcachedClient().touch(key, exp, opTimeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
-		}
+	public boolean touch(final String key, final int exp,
+			final long opTimeout) {
+		return execute(CacheOperation.TOUCH, new Call<Boolean>(false) {
+			@Override
+			Boolean call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return getMemcachedClient().touch(buildKey(key), exp,
+						opTimeout);
+			}
+		});
 	}
 
 	/**
@@ -1095,13 +3834,14 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public boolean touch(final String key, int exp) {
-		try {
-			return getMemcachedClient().touch(key, exp);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
-		}
+	public boolean touch(final String key, final int exp) {
+		return execute(CacheOperation.TOUCH, new Call<Boolean>(false) {
+			@Override
+			Boolean call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return getMemcachedClient().touch(buildKey(key), exp);
+			}
+		});
 	}
 
 	/**
@@ -1120,13 +3860,16 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public T getAndTouch(final String key, int newExp, long opTimeout) {
-		try {
-			return getMemcachedClient().getAndTouch(key, newExp, opTimeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+	public T getAndTouch(final String key, final int newExp,
+			final long opTimeout) {
+		return execute(CacheOperation.GET_AND_TOUCH, new Call<T>(null) {
+			@Override
+			T call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return recordResult(getMemcachedClient().<T> getAndTouch(
+						buildKey(key), newExp, opTimeout));
+			}
+		});
 	}
 
 	/**
@@ -1140,13 +3883,15 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public T getAndTouch(final String key, int newExp) {
-		try {
-			return getMemcachedClient().getAndTouch(key, newExp);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return null;
-		}
+	public T getAndTouch(final String key, final int newExp) {
+		return execute(CacheOperation.GET_AND_TOUCH, new Call<T>(null) {
+			@Override
+			T call() throws TimeoutException, InterruptedException,
+					MemcachedException {
+				return recordResult(getMemcachedClient().<T> getAndTouch(
+						buildKey(key), newExp));
+			}
+		});
 	}
 
 	/**
@@ -1184,19 +3929,32 @@ public abstract class BaseCache<T> {
 	 */
 	public long incr(final String key, final long delta) {
 		try {
-			return getMemcachedClient().incr(key, delta);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.INCR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().incr(buildKey(key), delta);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
 	public long incr(final String key, final long delta, final long initValue) {
 		try {
-			return getMemcachedClient().incr(key, delta, initValue);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.INCR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().incr(buildKey(key), delta,
+							initValue);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1223,12 +3981,19 @@ public abstract class BaseCache<T> {
 	 * @throws MemcachedException
 	 */
 	public long incr(final String key, final long delta, final long initValue,
-			long timeout) {
+			final long timeout) {
 		try {
-			return getMemcachedClient().incr(key, delta, initValue, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.INCR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().incr(buildKey(key),
+							delta, initValue, timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1250,10 +4015,16 @@ public abstract class BaseCache<T> {
 	 */
 	public long decr(final String key, final long delta) {
 		try {
-			return getMemcachedClient().decr(key, delta);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.DECR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().decr(buildKey(key), delta);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1267,12 +4038,19 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public long decr(final String key, final long delta, long initValue) {
+	public long decr(final String key, final long delta, final long initValue) {
 		try {
-			return getMemcachedClient().decr(key, delta, initValue);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.DECR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().decr(buildKey(key), delta,
+							initValue);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1298,13 +4076,20 @@ public abstract class BaseCache<T> {
 	 * @throws InterruptedException
 	 * @throws MemcachedException
 	 */
-	public long decr(final String key, final long delta, long initValue,
-			long timeout) {
+	public long decr(final String key, final long delta, final long initValue,
+			final long timeout) {
 		try {
-			return getMemcachedClient().decr(key, delta, initValue, timeout);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return -1;
+			return execute(CacheOperation.DECR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return getMemcachedClient().decr(buildKey(key),
+							delta, initValue, timeout);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1320,6 +4105,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll();
 		} catch (TimeoutException | InterruptedException | MemcachedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1328,6 +4115,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAllWithNoReply();
 		} catch (InterruptedException | MemcachedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1345,6 +4134,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll(timeout);
 		} catch (TimeoutException | InterruptedException | MemcachedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1364,6 +4155,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll(address);
 		} catch (MemcachedException | InterruptedException | TimeoutException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1372,6 +4165,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAllWithNoReply(address);
 		} catch (MemcachedException | InterruptedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1380,6 +4175,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll(address, timeout);
 		} catch (MemcachedException | InterruptedException | TimeoutException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1444,6 +4241,29 @@ public abstract class BaseCache<T> {
 	}
 
 	public void shutdown() {
+		synchronized (this) {
+			if (counterExecutor != null) {
+				counterExecutor.shutdown();
+				bufferedCounters.close();
+			}
+			if (asyncExecutor != null) {
+				asyncExecutor.shutdown();
+			}
+			if (refreshExecutor != null) {
+				refreshExecutor.shutdown();
+			}
+			if (keyFilterExecutor != null) {
+				keyFilterExecutor.shutdownNow();
+			}
+			if (offHeapCache != null) {
+				try {
+					offHeapCache.close();
+				} catch (IOException e) {
+					logger.error("", e);
+				}
+			}
+			unregisterMetrics();
+		}
 		try {
 			getMemcachedClient().shutdown();
 		} catch (IOException e) {
@@ -1453,10 +4273,15 @@ public abstract class BaseCache<T> {
 
 	public boolean delete(final String key) {
 		try {
-			return getMemcachedClient().delete(key);
-		} catch (TimeoutException | InterruptedException | MemcachedException e) {
-			logger.error("", e);
-			return false;
+			return execute(CacheOperation.DELETE, new Call<Boolean>(false) {
+				@Override
+				Boolean call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					return getMemcachedClient().delete(buildKey(key));
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1545,9 +4370,16 @@ public abstract class BaseCache<T> {
 	 */
 	public void deleteWithNoReply(final String key) {
 		try {
-			getMemcachedClient().deleteWithNoReply(key);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.DELETE, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					getMemcachedClient().deleteWithNoReply(buildKey(key));
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1567,9 +4399,17 @@ public abstract class BaseCache<T> {
 	 */
 	public void incrWithNoReply(final String key, final long delta) {
 		try {
-			getMemcachedClient().incrWithNoReply(key, delta);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.INCR, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					getMemcachedClient().incrWithNoReply(buildKey(key), delta);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1589,9 +4429,17 @@ public abstract class BaseCache<T> {
 	 */
 	public void decrWithNoReply(final String key, final long delta) {
 		try {
-			getMemcachedClient().decrWithNoReply(key, delta);
-		} catch (InterruptedException | MemcachedException e) {
-			logger.error("", e);
+			execute(CacheOperation.DECR, new Call<Void>(null) {
+				@Override
+				Void call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					getMemcachedClient().decrWithNoReply(buildKey(key), delta);
+					return null;
+				}
+			});
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1667,6 +4515,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAllWithNoReply(exptime);
 		} catch (InterruptedException | MemcachedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1675,6 +4525,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll(exptime, timeout);
 		} catch (TimeoutException | InterruptedException | MemcachedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1683,6 +4535,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAllWithNoReply(address, exptime);
 		} catch (MemcachedException | InterruptedException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1691,6 +4545,8 @@ public abstract class BaseCache<T> {
 			getMemcachedClient().flushAll(address, timeout, exptime);
 		} catch (MemcachedException | InterruptedException | TimeoutException e) {
 			logger.error("", e);
+		} finally {
+			invalidateAllLocal();
 		}
 	}
 
@@ -1788,7 +4644,7 @@ public abstract class BaseCache<T> {
 	 * @return
 	 */
 	public Counter getCounter(String key) {
-		return getMemcachedClient().getCounter(key);
+		return getMemcachedClient().getCounter(buildKey(key));
 	}
 
 	/**
@@ -1800,7 +4656,167 @@ public abstract class BaseCache<T> {
 	 * @return
 	 */
 	public Counter getCounter(String key, long initialValue) {
-		return getMemcachedClient().getCounter(key, initialValue);
+		return getMemcachedClient().getCounter(buildKey(key), initialValue);
+	}
+
+	/**
+	 * Bulk gets the values of counters written by incr and decr.
+	 *
+	 * @param keyCollections
+	 * @return the values by key,without the missing counters and the items
+	 *         which are not counters,which are logged,or null on error
+	 */
+	public Map<String, Long> getCounterValues(
+			final Collection<String> keyCollections) {
+		if (keyCollections.isEmpty()) {
+			return new HashMap<String, Long>();
+		}
+		return execute(CacheOperation.GET_MULTI,
+				new Call<Map<String, Long>>(null) {
+					@Override
+					Map<String, Long> call() throws TimeoutException,
+							InterruptedException, MemcachedException {
+						Map<String, CachedData> dataMap = stripKeys(
+								getMemcachedClient().get(
+										buildKeys(keyCollections),
+										CachedDataTranscoder.INSTANCE));
+						Map<String, Long> result = new HashMap<String, Long>();
+						for (Map.Entry<String, CachedData> entry : dataMap
+								.entrySet()) {
+							Long value = parseCounter(entry.getValue());
+							if (value != null) {
+								result.put(entry.getKey(), value);
+							} else {
+								logger.warn(entry.getKey()
+										+ " is not a counter");
+							}
+						}
+						return result;
+					}
+				});
+	}
+
+	/**
+	 * Add the delta to a counter,or subtract it if it is negative,creating the
+	 * counter with the initial value if it is missing.
+	 * 
+	 * @param key
+	 * @param delta
+	 * @param initValue
+	 * @param created
+	 *            whether the counter was created by this cache before,which
+	 *            saves the add
+	 * @return the new value,or -1 on error
+	 * @see #incrCounter(MemcachedClient, String, long, long, boolean)
+	 */
+	long incrCounter(final String key, final long delta, final long initValue,
+			final boolean created) {
+		try {
+			return execute(CacheOperation.INCR, new Call<Long>(-1L) {
+				@Override
+				Long call() throws TimeoutException, InterruptedException,
+						MemcachedException {
+					rememberKey(key);
+					return incrCounter(getMemcachedClient(), buildKey(key),
+							delta, initValue, created);
+				}
+			});
+		} finally {
+			invalidateLocal(key);
+		}
+	}
+
+	/**
+	 * xmemcached creates a missing counter through the transcoder of the
+	 * client,which may not store the plain digits memcached increments,
+	 * {@link FastJsonTranscoder} stores them in quotes.So a counter not created
+	 * yet is added as ASCII digits through {@link CachedDataTranscoder}
+	 * first,and a counter stored in quotes is rewritten as digits when
+	 * memcached refuses to increment it.
+	 */
+	private static long incrCounter(MemcachedClient client,
+			String memcachedKey, long delta, long initValue, boolean created)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return incrCounter(client, memcachedKey, delta, initValue, created,
+				client.getOpTimeout());
+	}
+
+	private static long incrCounter(MemcachedClient client,
+			String memcachedKey, long delta, long initValue, boolean created,
+			long opTimeout) throws TimeoutException, InterruptedException,
+			MemcachedException {
+		if (!created && addCounter(client, memcachedKey, initValue, opTimeout)) {
+			return initValue;
+		}
+		try {
+			return delta >= 0 ? client.incr(memcachedKey, delta, initValue,
+					opTimeout) : client.decr(memcachedKey, -delta, initValue,
+					opTimeout);
+		} catch (MemcachedClientException e) {
+			if (!repairCounter(client, memcachedKey, opTimeout)) {
+				throw e;
+			}
+			return delta >= 0 ? client.incr(memcachedKey, delta, initValue,
+					opTimeout) : client.decr(memcachedKey, -delta, initValue,
+					opTimeout);
+		}
+	}
+
+	private static boolean addCounter(MemcachedClient client,
+			String memcachedKey, long value, long opTimeout)
+			throws TimeoutException, InterruptedException, MemcachedException {
+		return client.add(memcachedKey, 0, counterData(value),
+				CachedDataTranscoder.INSTANCE, opTimeout);
+	}
+
+	/**
+	 * Rewrite a counter stored in quotes as plain digits.
+	 * 
+	 * @return false if the item is missing or is not a counter
+	 */
+	private static boolean repairCounter(MemcachedClient client,
+			String memcachedKey, long opTimeout) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		GetsResponse<CachedData> response = client.gets(memcachedKey,
+				opTimeout, CachedDataTranscoder.INSTANCE);
+		Long value = response == null ? null : parseCounter(response
+				.getValue());
+		if (value == null) {
+			return false;
+		}
+		logger.warn("Rewriting counter " + memcachedKey + " as digits");
+		// a concurrent repair may win the cas
+		client.cas(memcachedKey, 0, counterData(value),
+				CachedDataTranscoder.INSTANCE, opTimeout, response.getCas());
+		return true;
+	}
+
+	/**
+	 * Returns the value of a counter as the ASCII digits memcached increments.
+	 */
+	private static CachedData counterData(long value) {
+		byte[] bytes = String.valueOf(value).getBytes(
+				StandardCharsets.US_ASCII);
+		return new CachedData(0, bytes, bytes.length, -1);
+	}
+
+	/**
+	 * Returns the value of a counter,or null if the item is not a counter.
+	 * Counters created by xmemcached through a JSON transcoder are read too.
+	 */
+	private static Long parseCounter(CachedData data) {
+		// decr pads the value with spaces when it gets shorter
+		String text = new String(data.getData(), StandardCharsets.US_ASCII)
+				.trim();
+		if (text.length() > 1 && text.charAt(0) == '"'
+				&& text.charAt(text.length() - 1) == '"') {
+			text = text.substring(1, text.length() - 1);
+		}
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			return null;
+		}
 	}
 
 	/**
@@ -1849,10 +4865,13 @@ public abstract class BaseCache<T> {
 	 */
 	long decr(String key, long delta, long initValue, long timeout, int exp) {
 		try {
-			return getMemcachedClient().decr(key, delta, initValue, timeout);
+			return getMemcachedClient().decr(buildKey(key),
+					delta, initValue, timeout);
 		} catch (TimeoutException | InterruptedException | MemcachedException e) {
 			logger.error("", e);
 			return -1;
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1884,11 +4903,14 @@ public abstract class BaseCache<T> {
 	 */
 	long incr(String key, long delta, long initValue, long timeout, int exp) {
 		try {
-			return getMemcachedClient().incr(key, delta, initValue, timeout,
+			return getMemcachedClient().incr(buildKey(key),
+					delta, initValue, timeout,
 					exp);
 		} catch (TimeoutException | InterruptedException | MemcachedException e) {
 			logger.error("", e);
 			return -1;
+		} finally {
+			invalidateLocal(key);
 		}
 	}
 
@@ -1947,7 +4969,9 @@ public abstract class BaseCache<T> {
 
 	/**
 	 * Set a key provider for pre-processing keys before sending them to
-	 * memcached.
+	 * memcached.The key provider is set on the memcached client,so it applies
+	 * to every cache sharing the client,on top of the per cache prefix of
+	 * {@link #buildKey(String)}.
 	 * 
 	 * @since 1.3.8
 	 * @param keyProvider
@@ -1989,15 +5013,13 @@ public abstract class BaseCache<T> {
 	 * @throws TimeoutException
 	 */
 	public void invalidateNamespace(String ns) {
-		try {
-			getMemcachedClient().invalidateNamespace(ns);
-		} catch (MemcachedException | InterruptedException | TimeoutException e) {
-			logger.error("", e);
-		}
+		invalidateNamespace(ns, getOpTimeout());
 	}
 
 	/**
-	 * Invalidate all items under the namespace.
+	 * Invalidate all items under the namespace.The new version of the
+	 * namespace replaces the locally cached one at once,including the one of
+	 * the current thread if it is in the namespace.
 	 * 
 	 * @since 1.4.2
 	 * @param ns
@@ -2010,7 +5032,33 @@ public abstract class BaseCache<T> {
 	 */
 	public void invalidateNamespace(String ns, long opTimeout) {
 		try {
-			getMemcachedClient().invalidateNamespace(ns, opTimeout);
+			long version = incrCounter(getMemcachedClient(),
+					NAMESPACE_PREFIX.concat(ns), 1, System.currentTimeMillis(),
+					false, opTimeout);
+			updateNamespaceVersion(ns, String.valueOf(version));
+		} catch (MemcachedException | InterruptedException | TimeoutException e) {
+			logger.error("", e);
+			if (namespaceVersions != null) {
+				namespaceVersions.invalidate(ns);
+			}
+		} finally {
+			invalidateAllLocal();
+		}
+	}
+
+	/**
+	 * Drop the locally cached version of the namespace and read it again from
+	 * memcached,for example after another application invalidated it.
+	 * 
+	 * @see #getNamespaceVersionCacheTime()
+	 * @param ns
+	 */
+	public void refreshNamespace(String ns) {
+		if (namespaceVersions != null) {
+			namespaceVersions.invalidate(ns);
+		}
+		try {
+			updateNamespaceVersion(ns, getNamespaceVersion(ns));
 		} catch (MemcachedException | InterruptedException | TimeoutException e) {
 			logger.error("", e);
 		}
@@ -2023,7 +5071,7 @@ public abstract class BaseCache<T> {
 	 * @see #beginWithNamespace(String)
 	 */
 	public void endWithNamespace() {
-		getMemcachedClient().endWithNamespace();
+		namespaceLocal.remove();
 	}
 
 	/**
@@ -2040,12 +5088,88 @@ public abstract class BaseCache<T> {
 	 * }
 	 * </pre>
 	 * 
+	 * The version of the namespace is resolved once here,from the local cache
+	 * of {@link #getNamespaceVersionCacheTime()} or memcached,so operations in
+	 * the namespace cost no extra round trip.Keys are compatible with the
+	 * namespaces of xmemcached.If the version cannot be read,operations until
+	 * {@link #endWithNamespace()} miss.
+	 * 
 	 * @see #endWithNamespace()
 	 * @see #withNamespace(String, MemcachedClientCallable)
 	 * @param ns
 	 */
 	public void beginWithNamespace(String ns) {
-		getMemcachedClient().beginWithNamespace(ns);
+		String version;
+		try {
+			version = getNamespaceVersion(ns);
+		} catch (MemcachedException | InterruptedException | TimeoutException e) {
+			logger.error("", e);
+			version = UNRESOLVED_VERSION + System.nanoTime();
+		}
+		namespaceLocal.set(new Namespace(ns, version));
+	}
+
+	/**
+	 * Returns the current version of the namespace,creating it if the
+	 * namespace has none.
+	 */
+	private String getNamespaceVersion(String ns) throws TimeoutException,
+			InterruptedException, MemcachedException {
+		String version = namespaceVersions == null ? null : namespaceVersions
+				.get(ns);
+		if (version != null) {
+			return version;
+		}
+		MemcachedClient client = getMemcachedClient();
+		String nsKey = NAMESPACE_PREFIX.concat(ns);
+		CachedData data = client.get(nsKey, CachedDataTranscoder.INSTANCE);
+		if (data == null) {
+			addCounter(client, nsKey, System.currentTimeMillis(),
+					client.getOpTimeout());
+			data = client.get(nsKey, CachedDataTranscoder.INSTANCE);
+			if (data == null) {
+				throw new MemcachedException("Could not create namespace "
+						+ ns);
+			}
+		}
+		Long value = parseCounter(data);
+		if (value == null) {
+			throw new MemcachedException("Namespace " + ns
+					+ " has no valid version");
+		}
+		version = String.valueOf(value);
+		if (data.getData()[0] == '"') {
+			// created by xmemcached through a JSON transcoder,which decodes
+			// the quotes away,rewrite it as the digits invalidation increments
+			repairCounter(client, nsKey, client.getOpTimeout());
+		}
+		if (namespaceVersions != null) {
+			namespaceVersions.put(ns, version, 0);
+		}
+		return version;
+	}
+
+	private void updateNamespaceVersion(String ns, String version) {
+		if (namespaceVersions != null) {
+			namespaceVersions.put(ns, version, 0);
+		}
+		Namespace namespace = namespaceLocal.get();
+		if (namespace != null && namespace.name.equals(ns)) {
+			namespaceLocal.set(new Namespace(ns, version));
+		}
+	}
+
+	/**
+	 * A namespace of the current thread with its resolved version.
+	 */
+	private static final class Namespace {
+		final String name;
+		final String keyPrefix;
+
+		Namespace(String name, String version) {
+			this.name = name;
+			this.keyPrefix = version + ":";
+		}
 	}
 
 	/**
@@ -2068,6 +5192,9 @@ public abstract class BaseCache<T> {
 	 *   memcachedClient.invalidateNamespace(userId);
 	 * </pre>
 	 * 
+	 * The callable works on the memcached client directly,so its keys must be
+	 * built with {@link #buildKey(String)} to address items of this cache.
+	 * 
 	 * @since 1.4.2
 	 * @param ns
 	 * @param callable
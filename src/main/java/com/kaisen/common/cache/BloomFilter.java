@@ -0,0 +1,107 @@
+package com.kaisen.common.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bloom filter of string keys.{@link #mightContain(String)} never answers
+ * false for a key that was put,and answers true for a key that was not put
+ * with about the false positive rate the filter was sized for.
+ *
+ * Thread safe,keys can be put while others are looked up.Keys cannot be
+ * removed,build a new filter instead.
+ */
+public class BloomFilter {
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	/**
+	 * @param expectedInsertions
+	 *            the number of keys the filter is sized for
+	 * @param falsePositiveRate
+	 *            the expected false positive rate once the expected number
+	 *            of keys are put,between 0 and 1
+	 */
+	public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException(
+					"falsePositiveRate must be in (0,1)");
+		}
+		long n = Math.max(expectedInsertions, 1);
+		double ln2 = Math.log(2);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate)
+				/ (ln2 * ln2));
+		int words = (int) Math.min(Math.max((m + 63) >>> 6, 1),
+				Integer.MAX_VALUE >>> 1);
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = (long) words << 6;
+		this.hashCount = (int) Math.min(
+				Math.max(Math.round((double) bitCount / n * ln2), 1), 16);
+	}
+
+	public void put(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			set(index(h1 + i * h2));
+		}
+	}
+
+	public boolean mightContain(String key) {
+		long hash = hash(key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long index = index(h1 + i * h2);
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the size of the filter,in bits.
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	private long index(int combined) {
+		return (combined & 0xffffffffL) % bitCount;
+	}
+
+	private void set(long index) {
+		int i = (int) (index >>> 6);
+		long mask = 1L << index;
+		for (;;) {
+			long word = bits.get(i);
+			if ((word & mask) != 0 || bits.compareAndSet(i, word, word | mask)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 64-bit FNV-1a of the chars,finished with the murmur3 mix so that both
+	 * halves are usable as independent hashes.
+	 */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0, length = key.length(); i < length; i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,266 @@
+package com.kaisen.common.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a {@link BaseCache} whose increments are summed in memory and
+ * sent to memcached in batches,one incr or decr per key and flush instead of
+ * one per increment.
+ *
+ * Deltas are added to striped cells,so that threads incrementing the same
+ * key rarely contend.The net delta of each key is flushed every
+ * {@link BaseCache#getCounterFlushInterval()} milliseconds,and as soon as it
+ * reaches {@link BaseCache#getCounterFlushThreshold()} if there is one.The
+ * first flush of a key waits for the reply and creates the counter as plain
+ * digits if it is missing,later ones use incrWithNoReply and decrWithNoReply
+ * once it has succeeded.Deltas not flushed yet are lost if the process
+ * dies,{@link BaseCache#shutdown()} flushes them.
+ *
+ * Counters are flushed outside of any namespace.
+ *
+ * @see BaseCache#counters()
+ */
+public class BufferedCounters {
+	/** Value of the stripes of a cell removed from the map */
+	private static final long SEALED = Long.MIN_VALUE;
+
+	private final BaseCache<?> cache;
+	private final ScheduledExecutorService executor;
+	private final long threshold;
+	private final int stripeMask;
+	private final ConcurrentMap<String, Cell> cells = new ConcurrentHashMap<String, Cell>();
+	private final Object flushLock = new Object();
+
+	BufferedCounters(BaseCache<?> cache, ScheduledExecutorService executor,
+			long flushInterval, long threshold) {
+		this.cache = cache;
+		this.executor = executor;
+		this.threshold = threshold;
+		this.stripeMask = FrequencySketch.ceilingPowerOfTwo(Runtime
+				.getRuntime().availableProcessors()) - 1;
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public void incr(String key, long delta) {
+		add(key, delta);
+	}
+
+	/**
+	 * Deltas are netted before they are flushed,a counter is decremented by
+	 * memcached only when the decrements of a flush outweigh its increments.
+	 * Memcached counters never go below 0.
+	 */
+	public void decr(String key, long delta) {
+		add(key, -delta);
+	}
+
+	/**
+	 * Returns the delta of the key not flushed to memcached yet.
+	 */
+	public long getUnflushed(String key) {
+		Cell cell = cells.get(key);
+		return cell == null ? 0 : cell.sum();
+	}
+
+	/**
+	 * Returns the deltas not flushed to memcached yet,by key.
+	 */
+	public Map<String, Long> getUnflushed() {
+		Map<String, Long> result = new HashMap<String, Long>();
+		for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+			long delta = entry.getValue().sum();
+			if (delta != 0) {
+				result.put(entry.getKey(), delta);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Send the deltas of all keys to memcached now.
+	 */
+	public void flush() {
+		flush(false);
+	}
+
+	/**
+	 * Flush the deltas waiting for the replies,before the client is shut
+	 * down.
+	 */
+	void close() {
+		flush(true);
+	}
+
+	private void flush(boolean sync) {
+		synchronized (flushLock) {
+			for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+				flush(entry.getKey(), entry.getValue(), sync);
+			}
+		}
+	}
+
+	private void add(String key, long delta) {
+		if (delta == 0) {
+			return;
+		}
+		int index = stripeIndex();
+		for (;;) {
+			Cell cell = cells.get(key);
+			if (cell == null) {
+				Cell created = new Cell(stripeMask + 1);
+				cell = cells.putIfAbsent(key, created);
+				if (cell == null) {
+					cell = created;
+				}
+			}
+			if (cell.add(index, delta)) {
+				if (threshold > 0 && Math.abs(cell.sum()) >= threshold) {
+					scheduleFlush(key, cell);
+				}
+				return;
+			}
+			// the cell was idle and removed by a flush
+			cells.remove(key, cell);
+		}
+	}
+
+	private int stripeIndex() {
+		int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & stripeMask;
+	}
+
+	private void scheduleFlush(final String key, final Cell cell) {
+		if (!cell.flushScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					cell.flushScheduled.set(false);
+					synchronized (flushLock) {
+						if (cells.get(key) == cell) {
+							flush(key, cell, false);
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shut down,the last flush sends the delta
+			cell.flushScheduled.set(false);
+		}
+	}
+
+	/**
+	 * Send the delta of the key.A cell idle since the previous flush is
+	 * removed,so that counters no longer used do not stay in memory.Must hold
+	 * the flush lock.
+	 */
+	private void flush(String key, Cell cell, boolean sync) {
+		long delta = cell.drain();
+		if (delta != 0) {
+			cell.idle = false;
+		} else if (cell.idle) {
+			delta = cell.seal();
+			cells.remove(key, cell);
+			if (delta == 0) {
+				return;
+			}
+		} else {
+			cell.idle = true;
+			return;
+		}
+		if (sync || !cell.initialized) {
+			long result = cache.incrCounter(key, delta, Math.max(delta, 0),
+					cell.initialized);
+			if (result >= 0) {
+				cell.initialized = true;
+			} else {
+				// failed,keep the delta for the next flush
+				add(key, delta);
+			}
+		} else if (delta > 0) {
+			cache.incrWithNoReply(key, delta);
+		} else {
+			cache.decrWithNoReply(key, -delta);
+		}
+	}
+
+	private static final class Cell {
+		private final AtomicLongArray stripes;
+		private final AtomicBoolean flushScheduled = new AtomicBoolean();
+		/** Whether the counter exists in memcached,guarded by the flush lock */
+		private boolean initialized;
+		/** Whether the last flush found no delta,guarded by the flush lock */
+		private boolean idle;
+
+		Cell(int stripeCount) {
+			this.stripes = new AtomicLongArray(stripeCount);
+		}
+
+		/**
+		 * Returns false if the cell is sealed.
+		 */
+		boolean add(int index, long delta) {
+			int mask = stripes.length() - 1;
+			for (;;) {
+				long value = stripes.get(index);
+				if (value == SEALED) {
+					return false;
+				}
+				if (stripes.compareAndSet(index, value, value + delta)) {
+					return true;
+				}
+				// contended,move to another stripe
+				index = ThreadLocalRandom.current().nextInt() & mask;
+			}
+		}
+
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < stripes.length(); i++) {
+				long value = stripes.get(i);
+				if (value != SEALED) {
+					sum += value;
+				}
+			}
+			return sum;
+		}
+
+		/**
+		 * Take the delta added since the previous drain.
+		 */
+		long drain() {
+			long sum = 0;
+			for (int i = 0; i < stripes.length(); i++) {
+				sum += stripes.getAndSet(i, 0);
+			}
+			return sum;
+		}
+
+		/**
+		 * Take the last delta and refuse further adds,which go to a new cell.
+		 */
+		long seal() {
+			long sum = 0;
+			for (int i = 0; i < stripes.length(); i++) {
+				sum += stripes.getAndSet(i, SEALED);
+			}
+			return sum;
+		}
+	}
+}
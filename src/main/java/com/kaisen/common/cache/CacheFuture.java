@@ -0,0 +1,96 @@
+package com.kaisen.common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Result of an asynchronous cache operation.Listeners added before the
+ * operation completes are called by the thread completing it,listeners added
+ * afterwards are called immediately by the adding thread.
+ *
+ * @param <V>
+ *            result type
+ */
+public class CacheFuture<V> extends FutureTask<V> {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CacheFuture.class);
+
+	private List<CacheFutureListener<? super V>> listeners = new ArrayList<CacheFutureListener<? super V>>(
+			2);
+
+	public CacheFuture(Callable<V> callable) {
+		super(callable);
+	}
+
+	/**
+	 * Register a listener to be notified of the result.
+	 *
+	 * @param listener
+	 */
+	public void addListener(CacheFutureListener<? super V> listener) {
+		synchronized (this) {
+			if (!isDone()) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener);
+	}
+
+	/**
+	 * Complete the future with the failure,if it is not done yet.
+	 */
+	void fail(Throwable cause) {
+		setException(cause);
+	}
+
+	@Override
+	protected void done() {
+		List<CacheFutureListener<? super V>> completed;
+		synchronized (this) {
+			completed = listeners;
+			listeners = new ArrayList<CacheFutureListener<? super V>>(0);
+		}
+		for (CacheFutureListener<? super V> listener : completed) {
+			notifyListener(listener);
+		}
+	}
+
+	private void notifyListener(CacheFutureListener<? super V> listener) {
+		V result;
+		try {
+			result = get();
+		} catch (ExecutionException e) {
+			callFailure(listener, e.getCause());
+			return;
+		} catch (CancellationException e) {
+			callFailure(listener, e);
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			callFailure(listener, e);
+			return;
+		}
+		try {
+			listener.onSuccess(result);
+		} catch (RuntimeException e) {
+			logger.error("", e);
+		}
+	}
+
+	private void callFailure(CacheFutureListener<? super V> listener,
+			Throwable cause) {
+		try {
+			listener.onFailure(cause);
+		} catch (RuntimeException e) {
+			logger.error("", e);
+		}
+	}
+}
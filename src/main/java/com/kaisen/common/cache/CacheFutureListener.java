@@ -0,0 +1,13 @@
+package com.kaisen.common.cache;
+
+/**
+ * Callback notified when a {@link CacheFuture} completes.
+ *
+ * @param <V>
+ *            result type
+ */
+public interface CacheFutureListener<V> {
+	void onSuccess(V result);
+
+	void onFailure(Throwable cause);
+}
@@ -0,0 +1,18 @@
+package com.kaisen.common.cache;
+
+/**
+ * Computes the value of a key when it is missing from the cache.
+ *
+ * @param <T>
+ *            value type
+ */
+public interface CacheLoader<T> {
+	/**
+	 * Load the value of the key from the backing store.
+	 *
+	 * @param key
+	 * @return the value,or null if there is none
+	 * @throws Exception
+	 */
+	T load(String key) throws Exception;
+}
@@ -0,0 +1,189 @@
+package com.kaisen.common.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit,miss and error counters,per operation latency histograms and value
+ * size histograms of a cache.
+ *
+ * @see BaseCache#getCacheMetrics()
+ */
+public class CacheMetrics implements CacheMetricsMXBean {
+	private static final CacheOperation[] OPERATIONS = CacheOperation.values();
+
+	private final Histogram[] latencies = new Histogram[OPERATIONS.length];
+	private final AtomicLong[] errors = new AtomicLong[OPERATIONS.length];
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final Histogram readSizes = new Histogram();
+	private final Histogram writeSizes = new Histogram();
+
+	public CacheMetrics() {
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			latencies[i] = new Histogram();
+			errors[i] = new AtomicLong();
+		}
+	}
+
+	void recordLatency(CacheOperation operation, long nanos) {
+		latencies[operation.ordinal()].record(nanos);
+	}
+
+	void recordError(CacheOperation operation) {
+		errors[operation.ordinal()].incrementAndGet();
+	}
+
+	void recordHits(int count) {
+		if (count > 0) {
+			hits.addAndGet(count);
+		}
+	}
+
+	void recordMisses(int count) {
+		if (count > 0) {
+			misses.addAndGet(count);
+		}
+	}
+
+	void recordReadSize(int size) {
+		readSizes.record(size);
+	}
+
+	void recordWriteSize(int size) {
+		writeSizes.record(size);
+	}
+
+	/**
+	 * Returns the latencies of the operation,in nanoseconds.
+	 */
+	public Histogram getLatency(CacheOperation operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	public long getErrorCount(CacheOperation operation) {
+		return errors[operation.ordinal()].get();
+	}
+
+	/**
+	 * Returns the sizes of the values read,in bytes as stored in memcached.
+	 */
+	public Histogram getReadSizes() {
+		return readSizes;
+	}
+
+	/**
+	 * Returns the sizes of the values written,in bytes as stored in
+	 * memcached.
+	 */
+	public Histogram getWriteSizes() {
+		return writeSizes;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public long getErrorCount() {
+		long count = 0;
+		for (AtomicLong error : errors) {
+			count += error.get();
+		}
+		return count;
+	}
+
+	@Override
+	public double getHitRatio() {
+		long hitCount = hits.get();
+		long total = hitCount + misses.get();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (CacheOperation operation : OPERATIONS) {
+			result.put(operation.name(), getLatency(operation).getCount());
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (CacheOperation operation : OPERATIONS) {
+			result.put(operation.name(), getErrorCount(operation));
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMedianMicros() {
+		return latencyPercentileMicros(50);
+	}
+
+	@Override
+	public Map<String, Long> getLatency99thPercentileMicros() {
+		return latencyPercentileMicros(99);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMaxMicros() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (CacheOperation operation : OPERATIONS) {
+			result.put(operation.name(), TimeUnit.NANOSECONDS
+					.toMicros(getLatency(operation).getMax()));
+		}
+		return result;
+	}
+
+	@Override
+	public double getReadSizeMean() {
+		return readSizes.getMean();
+	}
+
+	@Override
+	public long getReadSize99thPercentile() {
+		return readSizes.getPercentile(99);
+	}
+
+	@Override
+	public double getWriteSizeMean() {
+		return writeSizes.getMean();
+	}
+
+	@Override
+	public long getWriteSize99thPercentile() {
+		return writeSizes.getPercentile(99);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			latencies[i].reset();
+			errors[i].set(0);
+		}
+		hits.set(0);
+		misses.set(0);
+		readSizes.reset();
+		writeSizes.reset();
+	}
+
+	private Map<String, Long> latencyPercentileMicros(double percentile) {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (CacheOperation operation : OPERATIONS) {
+			result.put(operation.name(), TimeUnit.NANOSECONDS
+					.toMicros(getLatency(operation).getPercentile(percentile)));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,37 @@
+package com.kaisen.common.cache;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CacheMetrics}.Latencies are in microseconds,value sizes
+ * in bytes,maps are keyed by {@link CacheOperation} name.
+ */
+public interface CacheMetricsMXBean {
+	long getHitCount();
+
+	long getMissCount();
+
+	long getErrorCount();
+
+	double getHitRatio();
+
+	Map<String, Long> getOperationCounts();
+
+	Map<String, Long> getErrorCounts();
+
+	Map<String, Long> getLatencyMedianMicros();
+
+	Map<String, Long> getLatency99thPercentileMicros();
+
+	Map<String, Long> getLatencyMaxMicros();
+
+	double getReadSizeMean();
+
+	long getReadSize99thPercentile();
+
+	double getWriteSizeMean();
+
+	long getWriteSize99thPercentile();
+
+	void reset();
+}
@@ -0,0 +1,9 @@
+package com.kaisen.common.cache;
+
+/**
+ * The memcached operations measured by {@link CacheMetrics}.The no reply
+ * variants of an operation are counted with it.
+ */
+public enum CacheOperation {
+	GET, GETS, GET_MULTI, GETS_MULTI, SET, ADD, REPLACE, APPEND, PREPEND, CAS, DELETE, TOUCH, GET_AND_TOUCH, INCR, DECR
+}
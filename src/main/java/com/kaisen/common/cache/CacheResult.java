@@ -0,0 +1,111 @@
+package com.kaisen.common.cache;
+
+/**
+ * The outcome of a read which tells a miss from a failure of memcached.
+ *
+ * @see BaseCache#fetch(String)
+ * @param <T>
+ */
+public final class CacheResult<T> {
+	public enum Status {
+		/** The value was found */
+		HIT,
+		/** memcached answered that there is no value */
+		MISS,
+		/**
+		 * The key is known to have no value,see
+		 * {@link BaseCache#setAbsent(String, int)}
+		 */
+		ABSENT,
+		/**
+		 * memcached failed,timed out or was not called because the circuit
+		 * breaker is open,whether there is a value is unknown
+		 */
+		ERROR
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static final CacheResult MISS = new CacheResult<Object>(
+			Status.MISS, null, null);
+
+	@SuppressWarnings("rawtypes")
+	private static final CacheResult ABSENT = new CacheResult<Object>(
+			Status.ABSENT, null, null);
+
+	private final Status status;
+	private final T value;
+	private final Throwable error;
+
+	private CacheResult(Status status, T value, Throwable error) {
+		this.status = status;
+		this.value = value;
+		this.error = error;
+	}
+
+	public static <T> CacheResult<T> hit(T value) {
+		if (value == null) {
+			throw new IllegalArgumentException("value is null");
+		}
+		return new CacheResult<T>(Status.HIT, value, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> CacheResult<T> miss() {
+		return MISS;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> CacheResult<T> absent() {
+		return ABSENT;
+	}
+
+	/**
+	 * @param error
+	 *            the cause,null if the call was rejected by the circuit
+	 *            breaker
+	 */
+	public static <T> CacheResult<T> error(Throwable error) {
+		return new CacheResult<T>(Status.ERROR, null, error);
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the value of a hit,otherwise null.
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the cause of an error,null for hits,misses and calls rejected
+	 * by the circuit breaker.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	public boolean isHit() {
+		return status == Status.HIT;
+	}
+
+	public boolean isMiss() {
+		return status == Status.MISS;
+	}
+
+	public boolean isAbsent() {
+		return status == Status.ABSENT;
+	}
+
+	public boolean isError() {
+		return status == Status.ERROR;
+	}
+
+	@Override
+	public String toString() {
+		return status == Status.HIT ? "CacheResult[HIT " + value + "]"
+				: "CacheResult[" + status + "]";
+	}
+}
@@ -0,0 +1,144 @@
+package com.kaisen.common.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+/**
+ * The manifest stored under the key of a value split into chunks,see
+ * {@link BaseCache#getChunkSize()}.
+ *
+ * The manifest is an item with the chunked flag whose data is version(1)
+ * flag(4) length(4) chunkSize(4) crc(4) token(8),where flag is the flag of
+ * the value.The chunks are stored under the key of the value followed by
+ * <code>#chunk:token:index</code>.Each write of a value picks a new random
+ * token,so a reader never joins the chunks of two writes.
+ */
+final class ChunkManifest {
+	/** Flag of a manifest */
+	static final int FLAG = 1 << 18;
+
+	private static final byte VERSION = 1;
+	private static final int SIZE = 25;
+	private static final String CHUNK_SUFFIX = "#chunk:";
+
+	private final int flag;
+	private final int length;
+	private final int chunkSize;
+	private final int crc;
+	private final long token;
+
+	private ChunkManifest(int flag, int length, int chunkSize, int crc,
+			long token) {
+		this.flag = flag;
+		this.length = length;
+		this.chunkSize = chunkSize;
+		this.crc = crc;
+		this.token = token;
+	}
+
+	static boolean isManifest(CachedData data) {
+		return (data.getFlag() & FLAG) != 0;
+	}
+
+	/**
+	 * Returns a new manifest for splitting the item into chunks.
+	 */
+	static ChunkManifest of(CachedData data, int chunkSize) {
+		return new ChunkManifest(data.getFlag(), data.getData().length,
+				chunkSize, checksum(data.getData(), data.getData().length),
+				ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * Returns the manifest stored in the item,or null if it is malformed.
+	 */
+	static ChunkManifest parse(CachedData data) {
+		byte[] bytes = data.getData();
+		if (bytes.length < SIZE || bytes[0] != VERSION) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, SIZE - 1);
+		ChunkManifest manifest = new ChunkManifest(buffer.getInt(),
+				buffer.getInt(), buffer.getInt(), buffer.getInt(),
+				buffer.getLong());
+		return manifest.length >= 0 && manifest.chunkSize > 0 ? manifest
+				: null;
+	}
+
+	/**
+	 * Returns the item holding the manifest.
+	 */
+	CachedData encode() {
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		buffer.put(VERSION).putInt(flag).putInt(length).putInt(chunkSize)
+				.putInt(crc).putLong(token);
+		return new CachedData(FLAG, buffer.array(), SIZE, -1);
+	}
+
+	int getChunkCount() {
+		return (int) (((long) length + chunkSize - 1) / chunkSize);
+	}
+
+	String getChunkKey(String key, int index) {
+		return key + CHUNK_SUFFIX + Long.toHexString(token) + ":" + index;
+	}
+
+	List<String> getChunkKeys(String key) {
+		int count = getChunkCount();
+		List<String> keys = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			keys.add(getChunkKey(key, i));
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the chunk of the value at the index.
+	 */
+	CachedData getChunk(byte[] value, int index) {
+		int offset = index * chunkSize;
+		int size = Math.min(chunkSize, length - offset);
+		byte[] chunk = new byte[size];
+		System.arraycopy(value, offset, chunk, 0, size);
+		return new CachedData(0, chunk, size, -1);
+	}
+
+	/**
+	 * Join the chunks of the value stored under the key.
+	 *
+	 * @param key
+	 *            the memcached key of the value
+	 * @param chunks
+	 *            the chunks by their memcached key
+	 * @return the value,or null if a chunk is missing or the joined value
+	 *         does not match the checksum
+	 */
+	CachedData join(String key, Map<String, CachedData> chunks) {
+		byte[] value = new byte[length];
+		int count = getChunkCount();
+		for (int i = 0; i < count; i++) {
+			CachedData chunk = chunks.get(getChunkKey(key, i));
+			int size = Math.min(chunkSize, length - i * chunkSize);
+			if (chunk == null || chunk.getData().length != size) {
+				return null;
+			}
+			System.arraycopy(chunk.getData(), 0, value, i * chunkSize, size);
+		}
+		if (checksum(value, length) != crc) {
+			return null;
+		}
+		return new CachedData(flag, value, length, -1);
+	}
+
+	private static int checksum(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,175 @@
+package com.kaisen.common.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling memcached while it keeps failing.
+ *
+ * The breaker starts closed and counts the calls and the failures of a
+ * window of calls.Once the failures reach the failure rate of the window it
+ * opens,and rejects all calls during the open time.It then turns half open
+ * and lets a few probe calls through:if they all succeed the breaker closes
+ * again,a single failure opens it for another open time.
+ *
+ * Thread safe,a closed breaker only costs a volatile read per call.
+ */
+public class CircuitBreaker {
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CircuitBreaker.class);
+
+	private final String name;
+	private final int windowSize;
+	private final int failureThreshold;
+	private final long openMillis;
+	private final int probeCount;
+
+	private volatile State state = State.CLOSED;
+	private volatile long openedAt;
+	private final AtomicInteger calls = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicInteger probes = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            name used in the log
+	 * @param failureRate
+	 *            share of failed calls opening the breaker,between 0 and 1
+	 * @param windowSize
+	 *            number of calls the failure rate is computed over
+	 * @param openMillis
+	 *            how long the breaker rejects calls once opened,in
+	 *            milliseconds
+	 * @param probeCount
+	 *            number of successful calls closing a half open breaker
+	 */
+	public CircuitBreaker(String name, double failureRate, int windowSize,
+			long openMillis, int probeCount) {
+		if (failureRate <= 0 || failureRate > 1) {
+			throw new IllegalArgumentException(
+					"failureRate must be in (0,1]");
+		}
+		if (windowSize <= 0 || probeCount <= 0) {
+			throw new IllegalArgumentException(
+					"windowSize and probeCount must be positive");
+		}
+		this.name = name;
+		this.windowSize = windowSize;
+		this.failureThreshold = Math.max(1,
+				(int) Math.ceil(failureRate * windowSize));
+		this.openMillis = openMillis;
+		this.probeCount = probeCount;
+	}
+
+	/**
+	 * Returns whether a call may go to memcached.
+	 */
+	public boolean allowRequest() {
+		State current = state;
+		if (current == State.CLOSED) {
+			return true;
+		}
+		if (current == State.OPEN
+				&& (System.currentTimeMillis() - openedAt < openMillis
+						|| !halfOpen())) {
+			rejectedCount.incrementAndGet();
+			return false;
+		}
+		if (state == State.CLOSED || probes.getAndDecrement() > 0) {
+			return true;
+		}
+		rejectedCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Count a finished call,successful or not.Failures must be reported by
+	 * {@link #onFailure()} before.
+	 */
+	public void onCall() {
+		State current = state;
+		if (current == State.CLOSED) {
+			if (calls.incrementAndGet() >= windowSize) {
+				resetWindow();
+			}
+		} else if (current == State.HALF_OPEN) {
+			if (calls.incrementAndGet() >= probeCount) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Count a failed call.
+	 */
+	public void onFailure() {
+		State current = state;
+		if (current == State.CLOSED) {
+			if (failures.incrementAndGet() >= failureThreshold) {
+				open(State.CLOSED);
+			}
+		} else if (current == State.HALF_OPEN) {
+			open(State.HALF_OPEN);
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the number of calls rejected so far.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	private synchronized void resetWindow() {
+		if (state == State.CLOSED && calls.get() >= windowSize) {
+			calls.set(0);
+			failures.set(0);
+		}
+	}
+
+	private synchronized void open(State from) {
+		if (state != from) {
+			return;
+		}
+		openedAt = System.currentTimeMillis();
+		state = State.OPEN;
+		logger.warn("Circuit breaker " + name + " opened for " + openMillis
+				+ " ms");
+	}
+
+	private synchronized boolean halfOpen() {
+		if (state != State.OPEN) {
+			return true;
+		}
+		if (System.currentTimeMillis() - openedAt < openMillis) {
+			return false;
+		}
+		calls.set(0);
+		failures.set(0);
+		probes.set(probeCount);
+		state = State.HALF_OPEN;
+		return true;
+	}
+
+	private synchronized void close() {
+		if (state != State.HALF_OPEN) {
+			return;
+		}
+		calls.set(0);
+		failures.set(0);
+		state = State.CLOSED;
+		logger.info("Circuit breaker " + name + " closed");
+	}
+}
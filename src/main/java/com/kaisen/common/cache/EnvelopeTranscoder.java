@@ -0,0 +1,103 @@
+package com.kaisen.common.cache;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+
+/**
+ * Transcoder unwrapping {@link ValueEnvelope enveloped} items,so that plain
+ * reads see the value whether or not it was stored with an envelope.Values
+ * are encoded without an envelope.Absent sentinels are decoded to null
+ * without calling the value transcoder.
+ *
+ * It also records the size of the values read and written when the cache
+ * collects metrics.
+ *
+ * @param <T>
+ */
+final class EnvelopeTranscoder<T> implements Transcoder<T> {
+	/** Flag of the sentinel stored for keys known to have no value */
+	static final int ABSENT_FLAG = 1 << 17;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final Transcoder<T> transcoder;
+	private final CacheMetrics metrics;
+
+	/**
+	 * @param transcoder
+	 * @param metrics
+	 *            null if the cache collects no metrics
+	 */
+	EnvelopeTranscoder(Transcoder<T> transcoder, CacheMetrics metrics) {
+		this.transcoder = transcoder;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public CachedData encode(T o) {
+		CachedData data = transcoder.encode(o);
+		if (metrics != null) {
+			metrics.recordWriteSize(data.getData().length);
+		}
+		return data;
+	}
+
+	/**
+	 * Returns a new absent sentinel,an empty item with the absent flag.
+	 */
+	static CachedData absent() {
+		return new CachedData(ABSENT_FLAG, EMPTY, 0, -1);
+	}
+
+	static boolean isAbsent(CachedData data) {
+		return (data.getFlag() & ABSENT_FLAG) != 0;
+	}
+
+	@Override
+	public T decode(CachedData d) {
+		// chunked values are joined by BaseCache,reads that get a manifest
+		// through a transcoder see a miss
+		if (isAbsent(d) || ChunkManifest.isManifest(d)) {
+			return null;
+		}
+		if (metrics != null) {
+			metrics.recordReadSize(d.getData().length);
+		}
+		ValueEnvelope envelope = ValueEnvelope.unwrap(d);
+		if (envelope != null) {
+			return transcoder.decode(envelope.getData());
+		}
+		return transcoder.decode(d);
+	}
+
+	@Override
+	public void setPrimitiveAsString(boolean primitiveAsString) {
+		transcoder.setPrimitiveAsString(primitiveAsString);
+	}
+
+	@Override
+	public void setPackZeros(boolean packZeros) {
+		transcoder.setPackZeros(packZeros);
+	}
+
+	@Override
+	public boolean isPrimitiveAsString() {
+		return transcoder.isPrimitiveAsString();
+	}
+
+	@Override
+	public boolean isPackZeros() {
+		return transcoder.isPackZeros();
+	}
+
+	@Override
+	public void setCompressionThreshold(int to) {
+		transcoder.setCompressionThreshold(to);
+	}
+
+	@Override
+	public void setCompressionMode(CompressionMode compressMode) {
+		transcoder.setCompressionMode(compressMode);
+	}
+}
@@ -0,0 +1,34 @@
+package com.kaisen.common.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Loads the keys from a snapshot file holding one key per line,in UTF-8.Blank
+ * lines are skipped.The file is read again on each load,so it can be
+ * replaced between two rebuilds of the filter.
+ */
+public class FileKeyLoader implements KeyLoader {
+	private final Path file;
+
+	public FileKeyLoader(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public Collection<String> loadKeys() throws IOException {
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		List<String> keys = new ArrayList<String>(lines.size());
+		for (String line : lines) {
+			if (!line.isEmpty()) {
+				keys.add(line);
+			}
+		}
+		return keys;
+	}
+}
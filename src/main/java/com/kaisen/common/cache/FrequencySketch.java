@@ -0,0 +1,93 @@
+package com.kaisen.common.cache;
+
+/**
+ * A 4-bit count-min sketch estimating how often a key has been seen
+ * recently.All counters are halved once the number of samples reaches ten
+ * times the table width,so old popularity ages out.
+ *
+ * Not thread safe,callers must hold a lock.
+ */
+final class FrequencySketch {
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int[] SEEDS = { 0x97cb3127, 0xb22ee6e3, 0x9e3779b9,
+			0x7f4a7c15 };
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	/**
+	 * @param maximumSize
+	 *            the number of entries the sketch should discriminate
+	 */
+	FrequencySketch(int maximumSize) {
+		int length = ceilingPowerOfTwo(Math.min(Math.max(maximumSize, 8),
+				1 << 24));
+		this.table = new long[length];
+		this.tableMask = length - 1;
+		this.sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the estimated number of occurrences of the hash,at most 15.
+	 */
+	int frequency(int hash) {
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the popularity of the hash if it does not exceed the maximum
+	 * of 15.
+	 */
+	void increment(int hash) {
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if ((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 16;
+		return h & tableMask;
+	}
+
+	static int ceilingPowerOfTwo(int x) {
+		if (x <= 1) {
+			return 1;
+		}
+		return Integer.highestOneBit(x - 1) << 1;
+	}
+}
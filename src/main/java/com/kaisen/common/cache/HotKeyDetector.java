@@ -0,0 +1,165 @@
+package com.kaisen.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Finds the most frequently accessed keys of a cache.
+ *
+ * Accesses are counted in a count-min sketch,and the keys whose estimated
+ * count enters the top K are tracked by name.All counts are halved once the
+ * number of samples reaches ten times the width of the sketch,so keys which
+ * are no longer accessed drop out of the top K.
+ *
+ * Thread safe,recording a key does not lock unless the key enters the top K.
+ */
+public class HotKeyDetector {
+	private static final int DEPTH = 4;
+	private static final int[] SEEDS = { 0x97cb3127, 0xb22ee6e3, 0x9e3779b9,
+			0x7f4a7c15 };
+
+	private final AtomicLongArray table;
+	private final int width;
+	private final int widthMask;
+	private final int sampleSize;
+	private final AtomicInteger samples = new AtomicInteger();
+
+	private final int topK;
+	private final ConcurrentMap<String, Long> hotKeys;
+	private volatile long threshold;
+
+	/**
+	 * @param topK
+	 *            number of hot keys to track
+	 */
+	public HotKeyDetector(int topK) {
+		if (topK <= 0) {
+			throw new IllegalArgumentException("topK must be positive");
+		}
+		this.topK = topK;
+		this.width = FrequencySketch.ceilingPowerOfTwo(Math.min(
+				Math.max(topK * 64, 1024), 1 << 20));
+		this.widthMask = width - 1;
+		this.table = new AtomicLongArray(width * DEPTH);
+		this.sampleSize = width * 10;
+		this.hotKeys = new ConcurrentHashMap<String, Long>(topK * 2);
+	}
+
+	/**
+	 * Count an access to the key.
+	 *
+	 * @param key
+	 * @return the estimated number of recent accesses to the key
+	 */
+	public long record(String key) {
+		int hash = spread(key.hashCode());
+		long estimate = Long.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			estimate = Math.min(estimate,
+					table.incrementAndGet(i * width + indexOf(hash, i)));
+		}
+		if (hotKeys.replace(key, estimate) == null && estimate > threshold) {
+			offer(key, estimate);
+		}
+		if (samples.incrementAndGet() == sampleSize) {
+			decay();
+		}
+		return estimate;
+	}
+
+	/**
+	 * Returns whether the key is one of the top K keys.
+	 */
+	public boolean isHot(String key) {
+		return hotKeys.containsKey(key);
+	}
+
+	/**
+	 * Returns the top K keys with their estimated number of recent accesses,
+	 * the hottest first.
+	 */
+	public Map<String, Long> getHotKeys() {
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(
+				hotKeys.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> o1,
+					Map.Entry<String, Long> o2) {
+				return Long.compare(o2.getValue(), o1.getValue());
+			}
+		});
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, Long> entry : entries) {
+			result.put(entry.getKey(), entry.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Add the key to the top K,evicting the coldest key if it is full.
+	 */
+	private synchronized void offer(String key, long estimate) {
+		if (hotKeys.size() < topK) {
+			hotKeys.put(key, estimate);
+			threshold = hotKeys.size() < topK ? 0 : coldest().getValue();
+			return;
+		}
+		Map.Entry<String, Long> coldest = coldest();
+		if (estimate <= coldest.getValue()) {
+			threshold = coldest.getValue();
+			return;
+		}
+		hotKeys.remove(coldest.getKey());
+		hotKeys.put(key, estimate);
+		threshold = coldest().getValue();
+	}
+
+	private Map.Entry<String, Long> coldest() {
+		Map.Entry<String, Long> coldest = null;
+		for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+			if (coldest == null || entry.getValue() < coldest.getValue()) {
+				coldest = entry;
+			}
+		}
+		return coldest;
+	}
+
+	/**
+	 * Halve all counts.Concurrent increments may be lost,which is fine for
+	 * estimates.
+	 */
+	private synchronized void decay() {
+		for (int i = 0; i < table.length(); i++) {
+			table.set(i, table.get(i) >>> 1);
+		}
+		for (Map.Entry<String, Long> entry : hotKeys.entrySet()) {
+			long count = entry.getValue() >>> 1;
+			if (count == 0) {
+				hotKeys.remove(entry.getKey());
+			} else {
+				entry.setValue(count);
+			}
+		}
+		threshold = hotKeys.size() < topK ? 0 : coldest().getValue();
+		samples.set(0);
+	}
+
+	private int indexOf(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 16;
+		return h & widthMask;
+	}
+
+	private static int spread(int h) {
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
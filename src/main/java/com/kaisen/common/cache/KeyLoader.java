@@ -0,0 +1,19 @@
+package com.kaisen.common.cache;
+
+import java.util.Collection;
+
+/**
+ * Lists the keys having a value in the backing store,used to build the key
+ * filter of a cache.
+ *
+ * @see BaseCache#createKeyLoader()
+ */
+public interface KeyLoader {
+	/**
+	 * Load all the keys having a value in the backing store.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	Collection<String> loadKeys() throws Exception;
+}
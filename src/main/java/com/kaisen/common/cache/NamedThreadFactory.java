@@ -0,0 +1,24 @@
+package com.kaisen.common.cache;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named after the cache they work for.
+ */
+class NamedThreadFactory implements ThreadFactory {
+	private final String prefix;
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	NamedThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, prefix + "-"
+				+ threadNumber.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,415 @@
+package com.kaisen.common.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded on-heap cache used as the local tier in front of memcached.
+ *
+ * The cache is bounded both by the number of entries and by the total weight
+ * (usually the serialized size in bytes) of the entries.Eviction follows the
+ * W-TinyLFU policy:new entries go to a small LRU admission window,and when
+ * they leave the window they only enter the main SLRU space if they are
+ * estimated to be more popular than the entry that would be evicted for them.
+ *
+ * The key space is split into segments,each guarded by its own lock.
+ *
+ * @param <V>
+ *            value type
+ */
+public class NearCache<V> {
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private final Segment<V>[] segments;
+	private final int segmentMask;
+	private final long expireAfterWrite;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param maximumSize
+	 *            maximum number of entries
+	 * @param maximumWeight
+	 *            maximum total weight of entries,0 means unbounded
+	 * @param expireAfterWrite
+	 *            time to live of an entry,in milliseconds.0 means entries
+	 *            never expire
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public NearCache(int maximumSize, long maximumWeight, long expireAfterWrite) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+		int segmentCount = Math.min(FrequencySketch
+				.ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2),
+				Math.max(1, Integer.highestOneBit(maximumSize / 64)));
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		this.expireAfterWrite = expireAfterWrite;
+		for (int i = 0; i < segmentCount; i++) {
+			this.segments[i] = new Segment<V>(Math.max(1, maximumSize
+					/ segmentCount), maximumWeight <= 0 ? Long.MAX_VALUE
+					: Math.max(1, maximumWeight / segmentCount));
+		}
+	}
+
+	/**
+	 * Returns the value associated with the key,or null if there is no live
+	 * local copy.
+	 */
+	public V get(String key) {
+		int hash = hash(key);
+		V value = segmentFor(hash).get(key, hash, System.currentTimeMillis());
+		if (value == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Store a local copy of the value.
+	 *
+	 * @param key
+	 * @param value
+	 * @param weight
+	 *            the weight of the entry,normally its serialized size
+	 */
+	public void put(String key, V value, int weight) {
+		put(key, value, weight, expireAfterWrite);
+	}
+
+	/**
+	 * Store a local copy of the value with its own time to live.
+	 *
+	 * @param key
+	 * @param value
+	 * @param weight
+	 *            the weight of the entry,normally its serialized size
+	 * @param ttl
+	 *            time to live in milliseconds,0 means never expire
+	 */
+	public void put(String key, V value, int weight, long ttl) {
+		if (value == null) {
+			return;
+		}
+		int hash = hash(key);
+		long expireAt = ttl > 0 ? System.currentTimeMillis() + ttl
+				: Long.MAX_VALUE;
+		int evicted = segmentFor(hash).put(key, hash, value,
+				Math.max(weight, 1), expireAt);
+		if (evicted > 0) {
+			evictionCount.addAndGet(evicted);
+		}
+	}
+
+	/**
+	 * Discard the local copy of the key.
+	 */
+	public void invalidate(String key) {
+		int hash = hash(key);
+		segmentFor(hash).remove(key);
+	}
+
+	/**
+	 * Discard all local copies.
+	 */
+	public void invalidateAll() {
+		for (Segment<V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns the number of entries,including expired ones which have not been
+	 * cleaned up yet.
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment<V> segment : segments) {
+			size += segment.count();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the total weight of the entries.
+	 */
+	public long weightedSize() {
+		long weight = 0;
+		for (Segment<V> segment : segments) {
+			weight += segment.weight();
+		}
+		return weight;
+	}
+
+	private Segment<V> segmentFor(int hash) {
+		return segments[(hash >>> 16) & segmentMask];
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+
+	private static final class Node<V> {
+		final String key;
+		final int hash;
+		V value;
+		int weight;
+		long expireAt;
+		int queue;
+		Node<V> prev;
+		Node<V> next;
+
+		Node(String key, int hash) {
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Doubly linked access order queue,the head is the least recently used.
+	 */
+	private static final class AccessQueue<V> {
+		final Node<V> sentinel = new Node<V>(null, 0);
+		int count;
+		long weight;
+
+		AccessQueue() {
+			sentinel.prev = sentinel;
+			sentinel.next = sentinel;
+		}
+
+		Node<V> head() {
+			return sentinel.next == sentinel ? null : sentinel.next;
+		}
+
+		Node<V> tail() {
+			return sentinel.prev == sentinel ? null : sentinel.prev;
+		}
+
+		void addLast(Node<V> node) {
+			node.prev = sentinel.prev;
+			node.next = sentinel;
+			sentinel.prev.next = node;
+			sentinel.prev = node;
+			count++;
+			weight += node.weight;
+		}
+
+		void remove(Node<V> node) {
+			node.prev.next = node.next;
+			node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			count--;
+			weight -= node.weight;
+		}
+
+		void moveToLast(Node<V> node) {
+			remove(node);
+			addLast(node);
+		}
+
+		void clear() {
+			sentinel.prev = sentinel;
+			sentinel.next = sentinel;
+			count = 0;
+			weight = 0;
+		}
+	}
+
+	private static final class Segment<V> {
+		private final Map<String, Node<V>> map;
+		private final FrequencySketch sketch;
+		private final AccessQueue<V> window = new AccessQueue<V>();
+		private final AccessQueue<V> probation = new AccessQueue<V>();
+		private final AccessQueue<V> protect = new AccessQueue<V>();
+		private final int maximumSize;
+		private final long maximumWeight;
+		private final int windowMaximum;
+		private final int protectedMaximum;
+
+		Segment(int maximumSize, long maximumWeight) {
+			this.map = new HashMap<String, Node<V>>();
+			this.sketch = new FrequencySketch(maximumSize);
+			this.maximumSize = maximumSize;
+			this.maximumWeight = maximumWeight;
+			this.windowMaximum = Math.max(1, maximumSize / 100);
+			this.protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+		}
+
+		synchronized V get(String key, int hash, long now) {
+			sketch.increment(hash);
+			Node<V> node = map.get(key);
+			if (node == null) {
+				return null;
+			}
+			if (node.expireAt <= now) {
+				unlink(node);
+				map.remove(key);
+				return null;
+			}
+			onAccess(node);
+			return node.value;
+		}
+
+		synchronized int put(String key, int hash, V value, int weight,
+				long expireAt) {
+			if (weight > maximumWeight) {
+				remove(key);
+				return 0;
+			}
+			sketch.increment(hash);
+			Node<V> node = map.get(key);
+			if (node != null) {
+				AccessQueue<V> queue = queueOf(node);
+				queue.remove(node);
+				node.value = value;
+				node.weight = weight;
+				node.expireAt = expireAt;
+				queue.addLast(node);
+				onAccess(node);
+			} else {
+				node = new Node<V>(key, hash);
+				node.value = value;
+				node.weight = weight;
+				node.expireAt = expireAt;
+				node.queue = WINDOW;
+				map.put(key, node);
+				window.addLast(node);
+			}
+			return evict();
+		}
+
+		synchronized void remove(String key) {
+			Node<V> node = map.remove(key);
+			if (node != null) {
+				unlink(node);
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			window.clear();
+			probation.clear();
+			protect.clear();
+		}
+
+		synchronized int count() {
+			return map.size();
+		}
+
+		synchronized long weight() {
+			return window.weight + probation.weight + protect.weight;
+		}
+
+		private void onAccess(Node<V> node) {
+			if (node.queue == WINDOW) {
+				window.moveToLast(node);
+			} else if (node.queue == PROBATION) {
+				probation.remove(node);
+				node.queue = PROTECTED;
+				protect.addLast(node);
+				while (protect.count > protectedMaximum) {
+					Node<V> demoted = protect.head();
+					protect.remove(demoted);
+					demoted.queue = PROBATION;
+					probation.addLast(demoted);
+				}
+			} else {
+				protect.moveToLast(node);
+			}
+		}
+
+		/**
+		 * Move the overflow of the window to the probation queue,then evict
+		 * until the segment is within its bounds.A candidate coming from the
+		 * window only survives if it is more popular than the probation
+		 * victim.
+		 */
+		private int evict() {
+			Node<V> firstCandidate = null;
+			while (window.count > windowMaximum) {
+				Node<V> node = window.head();
+				window.remove(node);
+				node.queue = PROBATION;
+				probation.addLast(node);
+				if (firstCandidate == null) {
+					firstCandidate = node;
+				}
+			}
+
+			int evicted = 0;
+			Node<V> candidate = firstCandidate;
+			while (map.size() > maximumSize || weight() > maximumWeight) {
+				Node<V> victim = probation.head();
+				if (victim == null || victim == candidate) {
+					victim = evictableOutsideProbation(victim);
+				} else if (candidate != null) {
+					Node<V> next = candidate.next == probation.sentinel ? null
+							: candidate.next;
+					if (sketch.frequency(candidate.hash) > sketch
+							.frequency(victim.hash)) {
+						// the candidate wins,keep it and evict the victim
+						candidate = next;
+					} else {
+						victim = candidate;
+						candidate = next;
+					}
+				}
+				if (victim == null) {
+					break;
+				}
+				unlink(victim);
+				map.remove(victim.key);
+				evicted++;
+			}
+			return evicted;
+		}
+
+		private Node<V> evictableOutsideProbation(Node<V> probationHead) {
+			if (probationHead != null) {
+				return probationHead;
+			}
+			Node<V> node = protect.head();
+			if (node != null) {
+				return node;
+			}
+			return window.head();
+		}
+
+		private AccessQueue<V> queueOf(Node<V> node) {
+			if (node.queue == WINDOW) {
+				return window;
+			} else if (node.queue == PROBATION) {
+				return probation;
+			}
+			return protect;
+		}
+
+		private void unlink(Node<V> node) {
+			queueOf(node).remove(node);
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package com.kaisen.common.cache;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+/**
+ * A cache of serialized values kept off the java heap in a memory mapped
+ * file,used as the tier between the on-heap local cache and memcached.
+ *
+ * The file is split into segments,each guarded by its own lock.A segment
+ * holds an open addressing index of the keys and a circular log of the
+ * records:records are appended at the head of the log and overwrite the
+ * oldest ones,so entries are evicted in insertion order.
+ *
+ * Entries keep their expiration time,and the file is reused when a cache of
+ * the same size opens it again,so a restarted process starts with the entries
+ * of the previous one that have not expired yet.Records written by a previous
+ * process are checked against their CRC32 before they are used.The file is
+ * locked while the cache is open and cannot be shared by two caches.
+ */
+public class OffHeapCache {
+	/** "KSOFFHEP" */
+	private static final long MAGIC = 0x4b534f4646484550L;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 64;
+	private static final int SEGMENT_HEADER_SIZE = 64;
+	private static final int MIN_SEGMENT_COUNT = 16;
+	private static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+	private static final int MIN_SEGMENT_CAPACITY = 4096;
+	/** Average record size the index is sized for */
+	private static final int AVERAGE_RECORD_SIZE = 128;
+	private static final int MIN_SLOT_COUNT = 64;
+
+	// slot:hash(8) position(8) expireAt(8) length(4) unused(4)
+	private static final int SLOT_SIZE = 32;
+	private static final int SLOT_POSITION = 8;
+	private static final int SLOT_EXPIRE_AT = 16;
+	private static final int SLOT_LENGTH = 24;
+
+	// record:keyLength(4) flag(4) dataLength(4) crc(4) key data
+	private static final int RECORD_HEADER_SIZE = 16;
+
+	private final RandomAccessFile file;
+	private final FileLock lock;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final long expireAfterWrite;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Open the cache file,or create it if it does not exist or was created
+	 * with another size.
+	 *
+	 * @param path
+	 *            the cache file
+	 * @param capacity
+	 *            size of the records,in bytes.The file is about 1/4 larger
+	 *            for the index
+	 * @param expireAfterWrite
+	 *            time to live of an entry,in milliseconds.0 means entries
+	 *            never expire
+	 * @throws IOException
+	 *             if the file cannot be mapped or is used by another cache
+	 */
+	public OffHeapCache(Path path, long capacity, long expireAfterWrite)
+			throws IOException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		int segmentCount = MIN_SEGMENT_COUNT;
+		while (capacity / segmentCount > MAX_SEGMENT_CAPACITY) {
+			segmentCount <<= 1;
+		}
+		int segmentCapacity = (int) Math.max(capacity / segmentCount,
+				MIN_SEGMENT_CAPACITY);
+		int slotCount = Math.max(FrequencySketch
+				.ceilingPowerOfTwo(segmentCapacity / AVERAGE_RECORD_SIZE),
+				MIN_SLOT_COUNT);
+		int segmentSize = SEGMENT_HEADER_SIZE + slotCount * SLOT_SIZE
+				+ segmentCapacity;
+		long fileSize = HEADER_SIZE + (long) segmentCount * segmentSize;
+
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		this.expireAfterWrite = expireAfterWrite;
+		this.file = new RandomAccessFile(path.toFile(), "rw");
+		FileLock fileLock = null;
+		try {
+			FileChannel channel = file.getChannel();
+			try {
+				fileLock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				fileLock = null;
+			}
+			if (fileLock == null) {
+				throw new IOException(path + " is used by another cache");
+			}
+			boolean reused = file.length() == fileSize;
+			MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0,
+					HEADER_SIZE);
+			reused = reused && header.getLong(0) == MAGIC
+					&& header.getInt(8) == VERSION
+					&& header.getInt(12) == segmentCount
+					&& header.getInt(16) == slotCount
+					&& header.getInt(20) == segmentCapacity;
+			if (!reused) {
+				// truncating first zeroes the index and the segment headers
+				file.setLength(0);
+				file.setLength(fileSize);
+				header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE);
+				header.putLong(0, MAGIC);
+				header.putInt(8, VERSION);
+				header.putInt(12, segmentCount);
+				header.putInt(16, slotCount);
+				header.putInt(20, segmentCapacity);
+			}
+			for (int i = 0; i < segmentCount; i++) {
+				segments[i] = new Segment(channel.map(MapMode.READ_WRITE,
+						HEADER_SIZE + (long) i * segmentSize, segmentSize),
+						slotCount, segmentCapacity);
+			}
+		} catch (IOException | RuntimeException e) {
+			file.close();
+			throw e;
+		}
+		this.lock = fileLock;
+	}
+
+	/**
+	 * Returns the value stored for the key,or null if there is no live entry.
+	 */
+	public CachedData get(String key) {
+		long hash = hash(key);
+		CachedData data = segmentFor(hash).get(
+				key.getBytes(StandardCharsets.UTF_8), hash,
+				System.currentTimeMillis());
+		if (data == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+		}
+		return data;
+	}
+
+	public void put(String key, CachedData data) {
+		put(key, data, expireAfterWrite);
+	}
+
+	/**
+	 * Store the value with its own time to live.Values larger than 1/8 of a
+	 * segment are not stored.
+	 *
+	 * @param key
+	 * @param data
+	 * @param ttl
+	 *            time to live in milliseconds,0 means never expire
+	 */
+	public void put(String key, CachedData data, long ttl) {
+		if (data == null) {
+			return;
+		}
+		long hash = hash(key);
+		long now = System.currentTimeMillis();
+		segmentFor(hash).put(key.getBytes(StandardCharsets.UTF_8), hash,
+				data.getFlag(), data.getData(),
+				ttl > 0 ? now + ttl : Long.MAX_VALUE, now);
+	}
+
+	public void invalidate(String key) {
+		long hash = hash(key);
+		segmentFor(hash).remove(key.getBytes(StandardCharsets.UTF_8), hash,
+				System.currentTimeMillis());
+	}
+
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of live entries.
+	 */
+	public long size() {
+		long now = System.currentTimeMillis();
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size(now);
+		}
+		return size;
+	}
+
+	/**
+	 * Write the entries to the file and release it.
+	 */
+	public void close() throws IOException {
+		for (Segment segment : segments) {
+			segment.force();
+		}
+		try {
+			lock.release();
+		} finally {
+			file.close();
+		}
+	}
+
+	private Segment segmentFor(long hash) {
+		return segments[(int) (hash >>> 32) & segmentMask];
+	}
+
+	/**
+	 * The hash must not change between two runs,0 marks an empty slot.
+	 */
+	private static long hash(String key) {
+		long hash = BloomFilter.hash(key);
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static int checksum(byte[] key, int flag, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(key);
+		crc.update(flag >>> 24);
+		crc.update(flag >>> 16);
+		crc.update(flag >>> 8);
+		crc.update(flag);
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * The log positions grow forever,a record is live while its position is
+	 * not below the tail,which follows the head at one capacity.Removed slots
+	 * have the position -1.
+	 */
+	private static final class Segment {
+		private final MappedByteBuffer buffer;
+		private final int slotMask;
+		private final int slotCount;
+		private final int dataOffset;
+		private final int capacity;
+		private long head;
+		private long tail;
+		/** Records below this position were written by a previous process */
+		private final long verifiedFrom;
+		/** Number of slots that are not empty,including dead entries */
+		private int used;
+
+		Segment(MappedByteBuffer buffer, int slotCount, int capacity) {
+			this.buffer = buffer;
+			this.slotCount = slotCount;
+			this.slotMask = slotCount - 1;
+			this.dataOffset = SEGMENT_HEADER_SIZE + slotCount * SLOT_SIZE;
+			this.capacity = capacity;
+			this.head = buffer.getLong(0);
+			this.tail = buffer.getLong(8);
+			this.verifiedFrom = head;
+			for (int i = 0; i < slotCount; i++) {
+				if (buffer.getLong(slotOffset(i)) != 0) {
+					used++;
+				}
+			}
+		}
+
+		synchronized CachedData get(byte[] key, long hash, long now) {
+			int slot = find(key, hash, now);
+			if (slot < 0) {
+				return null;
+			}
+			long position = buffer.getLong(slot + SLOT_POSITION);
+			int offset = recordOffset(position);
+			int flag = buffer.getInt(offset + 4);
+			byte[] data = new byte[buffer.getInt(offset + 8)];
+			buffer.position(offset + RECORD_HEADER_SIZE + key.length);
+			buffer.get(data);
+			if (position < verifiedFrom
+					&& buffer.getInt(offset + 12) != checksum(key, flag,
+							data)) {
+				buffer.putLong(slot + SLOT_POSITION, -1);
+				return null;
+			}
+			return new CachedData(flag, data);
+		}
+
+		synchronized void put(byte[] key, long hash, int flag, byte[] data,
+				long expireAt, long now) {
+			int length = RECORD_HEADER_SIZE + key.length + data.length;
+			if (length > capacity / 8) {
+				int slot = find(key, hash, now);
+				if (slot >= 0) {
+					buffer.putLong(slot + SLOT_POSITION, -1);
+				}
+				return;
+			}
+			if (used >= slotCount / 4 * 3) {
+				compact(now);
+			}
+			int target = -1;
+			int index = (int) hash & slotMask;
+			for (int i = 0; i < slotCount; i++) {
+				int slot = slotOffset((index + i) & slotMask);
+				long slotHash = buffer.getLong(slot);
+				if (slotHash == 0) {
+					if (target < 0) {
+						target = slot;
+						used++;
+					}
+					break;
+				}
+				if (slotHash == hash && matches(slot, key, now)) {
+					target = slot;
+					break;
+				}
+				if (target < 0 && !isLive(slot, now)) {
+					target = slot;
+				}
+			}
+
+			long position = head;
+			int offset = (int) (position % capacity);
+			if (offset + length > capacity) {
+				position += capacity - offset;
+				offset = 0;
+			}
+			head = position + length;
+			tail = Math.max(tail, head - capacity);
+			buffer.putLong(8, tail);
+			buffer.putLong(0, head);
+
+			offset += dataOffset;
+			buffer.putInt(offset, key.length);
+			buffer.putInt(offset + 4, flag);
+			buffer.putInt(offset + 8, data.length);
+			buffer.putInt(offset + 12, checksum(key, flag, data));
+			buffer.position(offset + RECORD_HEADER_SIZE);
+			buffer.put(key);
+			buffer.put(data);
+
+			buffer.putLong(target, hash);
+			buffer.putLong(target + SLOT_EXPIRE_AT, expireAt);
+			buffer.putInt(target + SLOT_LENGTH, length);
+			buffer.putLong(target + SLOT_POSITION, position);
+		}
+
+		synchronized void remove(byte[] key, long hash, long now) {
+			int slot = find(key, hash, now);
+			if (slot >= 0) {
+				buffer.putLong(slot + SLOT_POSITION, -1);
+			}
+		}
+
+		synchronized void clear() {
+			tail = head;
+			buffer.putLong(8, tail);
+			for (int i = 0; i < slotCount; i++) {
+				buffer.putLong(slotOffset(i), 0);
+			}
+			used = 0;
+		}
+
+		synchronized int size(long now) {
+			int size = 0;
+			for (int i = 0; i < slotCount; i++) {
+				int slot = slotOffset(i);
+				if (buffer.getLong(slot) != 0 && isLive(slot, now)) {
+					size++;
+				}
+			}
+			return size;
+		}
+
+		synchronized void force() {
+			buffer.force();
+		}
+
+		/**
+		 * Returns the offset of the slot holding the live entry of the key,or
+		 * -1.
+		 */
+		private int find(byte[] key, long hash, long now) {
+			int index = (int) hash & slotMask;
+			for (int i = 0; i < slotCount; i++) {
+				int slot = slotOffset((index + i) & slotMask);
+				long slotHash = buffer.getLong(slot);
+				if (slotHash == 0) {
+					return -1;
+				}
+				if (slotHash == hash && matches(slot, key, now)) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		private boolean isLive(int slot, long now) {
+			long position = buffer.getLong(slot + SLOT_POSITION);
+			return position >= tail && position < head
+					&& buffer.getLong(slot + SLOT_EXPIRE_AT) > now;
+		}
+
+		/**
+		 * Returns whether the slot is live and its record has the key.
+		 */
+		private boolean matches(int slot, byte[] key, long now) {
+			if (!isLive(slot, now)) {
+				return false;
+			}
+			int offset = recordOffset(buffer.getLong(slot + SLOT_POSITION));
+			int length = buffer.getInt(slot + SLOT_LENGTH);
+			int dataLength = buffer.getInt(offset + 8);
+			// records of a previous process may be damaged
+			if (buffer.getInt(offset) != key.length || dataLength < 0
+					|| length != RECORD_HEADER_SIZE + key.length + dataLength
+					|| offset - dataOffset + length > capacity) {
+				return false;
+			}
+			offset += RECORD_HEADER_SIZE;
+			for (int i = 0; i < key.length; i++) {
+				if (buffer.get(offset + i) != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Rebuild the index without the dead entries.When more than half of
+		 * the slots would still be used,the oldest half of the log is evicted
+		 * until they are not.
+		 */
+		private void compact(long now) {
+			long[] hashes = new long[used];
+			long[] positions = new long[used];
+			long[] expireAts = new long[used];
+			int[] lengths = new int[used];
+			int count = 0;
+			for (int i = 0; i < slotCount && count < used; i++) {
+				int slot = slotOffset(i);
+				long hash = buffer.getLong(slot);
+				if (hash != 0 && isLive(slot, now)) {
+					hashes[count] = hash;
+					positions[count] = buffer.getLong(slot + SLOT_POSITION);
+					expireAts[count] = buffer.getLong(slot + SLOT_EXPIRE_AT);
+					lengths[count] = buffer.getInt(slot + SLOT_LENGTH);
+					count++;
+				}
+			}
+			while (count > slotCount / 2) {
+				tail += (head - tail + 1) / 2;
+				int live = 0;
+				for (int i = 0; i < count; i++) {
+					if (positions[i] >= tail) {
+						hashes[live] = hashes[i];
+						positions[live] = positions[i];
+						expireAts[live] = expireAts[i];
+						lengths[live] = lengths[i];
+						live++;
+					}
+				}
+				count = live;
+			}
+			buffer.putLong(8, tail);
+			for (int i = 0; i < slotCount; i++) {
+				buffer.putLong(slotOffset(i), 0);
+			}
+			for (int i = 0; i < count; i++) {
+				int index = (int) hashes[i] & slotMask;
+				int slot = slotOffset(index);
+				while (buffer.getLong(slot) != 0) {
+					index = (index + 1) & slotMask;
+					slot = slotOffset(index);
+				}
+				buffer.putLong(slot, hashes[i]);
+				buffer.putLong(slot + SLOT_POSITION, positions[i]);
+				buffer.putLong(slot + SLOT_EXPIRE_AT, expireAts[i]);
+				buffer.putInt(slot + SLOT_LENGTH, lengths[i]);
+			}
+			used = count;
+		}
+
+		private int recordOffset(long position) {
+			return dataOffset + (int) (position % capacity);
+		}
+
+		private static int slotOffset(int index) {
+			return SEGMENT_HEADER_SIZE + index * SLOT_SIZE;
+		}
+	}
+}
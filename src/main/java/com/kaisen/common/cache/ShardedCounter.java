@@ -0,0 +1,253 @@
+package com.kaisen.common.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A counter of a {@link BaseCache} split into shards,so that the increments
+ * of a hot counter are spread over the memcached nodes instead of queuing on
+ * the node of one key.
+ *
+ * Each increment goes to one shard,<code>key#shard:index</code>,chosen at
+ * random or by thread.Decrements go to shards of their own,
+ * <code>key#shard-:index</code>,since memcached counters never go below 0
+ * and a shard may be decremented more than it was incremented.The value of
+ * the counter is the increments minus the decrements,summed with one bulk
+ * get.
+ *
+ * The number of shards is stored with the counter in <code>key#shards</code>
+ * and can be changed by {@link #reshard(int)}.The highest number ever used is
+ * stored in <code>key#maxShards</code>,reads sum all of those shards,so that
+ * no increment is lost when the counter shrinks.Each instance reads the
+ * numbers again every {@link #REFRESH_INTERVAL} milliseconds,keep and reuse
+ * it.
+ *
+ * The counter is not atomic,a read may miss the increments in flight.Shards
+ * are created as plain ASCII digits whatever the transcoder of the client,
+ * the first increment of a shard by an instance costs an extra add.
+ *
+ * @see BaseCache#shardedCounter(String, int)
+ */
+public class ShardedCounter {
+	/**
+	 * How the shard of an increment is chosen.
+	 */
+	public static enum Selection {
+		/** A random shard for each increment */
+		RANDOM,
+		/** The same shard for all increments of a thread */
+		THREAD
+	}
+
+	/** How often the number of shards is read again,in milliseconds */
+	public static final long REFRESH_INTERVAL = 1000;
+
+	private static final String INCR_SUFFIX = "#shard:";
+	private static final String DECR_SUFFIX = "#shard-:";
+	private static final String SHARDS_SUFFIX = "#shards";
+	private static final String MAX_SHARDS_SUFFIX = "#maxShards";
+
+	private final BaseCache<?> cache;
+	private final String key;
+	private final int defaultShardCount;
+	private final Selection selection;
+	private final String shardsKey;
+	private final String maxShardsKey;
+	/** Shards created by this instance,which are incremented directly */
+	private final Set<String> createdShards = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile int shardCount;
+	private volatile int maxShardCount;
+	private volatile long refreshAt;
+
+	ShardedCounter(BaseCache<?> cache, String key, int shardCount,
+			Selection selection) {
+		if (shardCount <= 0) {
+			throw new IllegalArgumentException("shardCount must be positive");
+		}
+		this.cache = cache;
+		this.key = key;
+		this.defaultShardCount = shardCount;
+		this.selection = selection;
+		this.shardsKey = key + SHARDS_SUFFIX;
+		this.maxShardsKey = key + MAX_SHARDS_SUFFIX;
+		this.shardCount = shardCount;
+		this.maxShardCount = shardCount;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Add the delta to one shard.
+	 *
+	 * @return false on error
+	 */
+	public boolean incr(long delta) {
+		if (delta < 0) {
+			return decr(-delta);
+		}
+		return add(key + INCR_SUFFIX + selectShard(), delta);
+	}
+
+	/**
+	 * Add the delta to one decrement shard.The value of the counter may go
+	 * below 0.
+	 *
+	 * @return false on error
+	 */
+	public boolean decr(long delta) {
+		if (delta < 0) {
+			return incr(-delta);
+		}
+		return add(key + DECR_SUFFIX + selectShard(), delta);
+	}
+
+	private boolean add(String shardKey, long delta) {
+		if (cache.incrCounter(shardKey, delta, delta,
+				createdShards.contains(shardKey)) < 0) {
+			return false;
+		}
+		createdShards.add(shardKey);
+		return true;
+	}
+
+	/**
+	 * Returns the sum of the shards,read with one bulk get,or null on error.
+	 */
+	public Long get() {
+		int count = Math.max(maxShardCount, defaultShardCount);
+		List<String> keys = new ArrayList<String>(count * 2 + 2);
+		keys.add(shardsKey);
+		keys.add(maxShardsKey);
+		for (int i = 0; i < count; i++) {
+			keys.add(key + INCR_SUFFIX + i);
+			keys.add(key + DECR_SUFFIX + i);
+		}
+		Map<String, Long> values = cache.getCounterValues(keys);
+		if (values == null) {
+			return null;
+		}
+		Long shards = values.get(shardsKey);
+		Long maxShards = values.get(maxShardsKey);
+		if (shards != null && maxShards != null) {
+			update(shards, maxShards);
+			if (maxShards > count) {
+				// resharded since the last refresh,read the new shards too
+				return get();
+			}
+		}
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			Long increments = values.get(key + INCR_SUFFIX + i);
+			Long decrements = values.get(key + DECR_SUFFIX + i);
+			sum += (increments == null ? 0 : increments)
+					- (decrements == null ? 0 : decrements);
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the number of shards increments are spread over.
+	 */
+	public int getShardCount() {
+		refresh();
+		return shardCount;
+	}
+
+	/**
+	 * Change the number of shards increments are spread over.When the counter
+	 * shrinks,the shards no longer written keep their counts and are still
+	 * read.Other instances of the counter follow within
+	 * {@link #REFRESH_INTERVAL}.Reshard a counter from one place at a
+	 * time,concurrent reshards may leave a wrong number of shards.
+	 *
+	 * @return false on error
+	 */
+	public boolean reshard(int newShardCount) {
+		if (newShardCount <= 0) {
+			throw new IllegalArgumentException("shardCount must be positive");
+		}
+		refreshAt = 0;
+		if (!refresh()) {
+			return false;
+		}
+		int delta = newShardCount - shardCount;
+		if (delta != 0
+				&& cache.incrCounter(shardsKey, delta, newShardCount,
+						true) < 0) {
+			return false;
+		}
+		int maxDelta = newShardCount - maxShardCount;
+		if (maxDelta > 0
+				&& cache.incrCounter(maxShardsKey, maxDelta, newShardCount,
+						true) < 0) {
+			// the old shards are still read,fix the number of shards
+			cache.incrCounter(shardsKey, -delta, shardCount, true);
+			return false;
+		}
+		update(newShardCount, Math.max(newShardCount, maxShardCount));
+		return true;
+	}
+
+	private int selectShard() {
+		refresh();
+		int count = shardCount;
+		if (count == 1) {
+			return 0;
+		}
+		if (selection == Selection.THREAD) {
+			int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+			return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % count;
+		}
+		return ThreadLocalRandom.current().nextInt(count);
+	}
+
+	/**
+	 * Read the numbers of shards if they are older than the refresh
+	 * interval,storing them for a new counter.
+	 *
+	 * @return false on error,the previous numbers are kept
+	 */
+	private boolean refresh() {
+		long now = System.currentTimeMillis();
+		if (now < refreshAt) {
+			return true;
+		}
+		// retry after the interval even on error
+		refreshAt = now + REFRESH_INTERVAL;
+		Map<String, Long> values = cache.getCounterValues(Arrays.asList(
+				shardsKey, maxShardsKey));
+		if (values == null) {
+			return false;
+		}
+		Long shards = values.get(shardsKey);
+		if (shards == null) {
+			shards = cache.incrCounter(shardsKey, 0, defaultShardCount, false);
+		}
+		Long maxShards = values.get(maxShardsKey);
+		if (maxShards == null) {
+			maxShards = cache.incrCounter(maxShardsKey, 0, defaultShardCount,
+					false);
+		}
+		if (shards < 0 || maxShards < 0) {
+			return false;
+		}
+		update(shards, maxShards);
+		return true;
+	}
+
+	private void update(long shards, long maxShards) {
+		if (shards > 0) {
+			shardCount = (int) shards;
+			maxShardCount = (int) Math.max(shards, maxShards);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.kaisen.common.cache;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+/**
+ * Reads the items of a snapshot file written by {@link SnapshotWriter}:
+ *
+ * <pre>
+ * while (reader.next()) {
+ * 	reader.getKey();
+ * 	reader.getData();
+ * }
+ * </pre>
+ */
+public class SnapshotReader implements Closeable {
+	private final DataInputStream in;
+	private final long createdAt;
+	private String key;
+	private long expireAt;
+	private CachedData data;
+
+	/**
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot of this
+	 *             version
+	 */
+	public SnapshotReader(Path file) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(Files.newInputStream(file), 8192)));
+		try {
+			if (in.readInt() != SnapshotWriter.MAGIC
+					|| in.readByte() != SnapshotWriter.VERSION) {
+				throw new IOException(file + " is not a cache snapshot");
+			}
+			this.createdAt = in.readLong();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns when the snapshot was taken,in milliseconds.
+	 */
+	public long getCreatedAt() {
+		return createdAt;
+	}
+
+	/**
+	 * Read the next item.
+	 *
+	 * @return false at the end of the snapshot
+	 * @throws java.io.EOFException
+	 *             if the snapshot is truncated
+	 */
+	public boolean next() throws IOException {
+		if (!in.readBoolean()) {
+			key = null;
+			data = null;
+			return false;
+		}
+		key = in.readUTF();
+		expireAt = in.readLong();
+		int flag = in.readInt();
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		data = new CachedData(flag, bytes);
+		return true;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns when the item expires,in milliseconds,or 0 if it never does.
+	 */
+	public long getExpireAt() {
+		return expireAt;
+	}
+
+	public CachedData getData() {
+		return data;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
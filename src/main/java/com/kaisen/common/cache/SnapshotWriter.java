@@ -0,0 +1,92 @@
+package com.kaisen.common.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+/**
+ * Writes the serialized items of a cache to a snapshot file,read back by
+ * {@link SnapshotReader}.
+ *
+ * The items are written to a temporary file next to the snapshot,which
+ * replaces the snapshot on {@link #commit()},so readers never see a partial
+ * snapshot.Closing the writer without committing discards the items.
+ *
+ * The file is gzipped:a header of magic(4) version(1) createdAt(8),then for
+ * each item true(1) key(utf) expireAt(8) flag(4) length(4) data,and false(1)
+ * at the end.expireAt is when the item expires in milliseconds,0 if it never
+ * does.
+ */
+public class SnapshotWriter implements Closeable {
+	static final int MAGIC = 0x4b53534e;
+	static final int VERSION = 2;
+
+	private final Path file;
+	private final Path tempFile;
+	private final DataOutputStream out;
+	private int count;
+	private boolean closed;
+
+	public SnapshotWriter(Path file) throws IOException {
+		this.file = file;
+		this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(Files.newOutputStream(tempFile), 8192)));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(System.currentTimeMillis());
+	}
+
+	/**
+	 * @param expireAt
+	 *            when the item expires,in milliseconds,0 if it never does
+	 */
+	public void write(String key, CachedData data, long expireAt)
+			throws IOException {
+		out.writeBoolean(true);
+		out.writeUTF(key);
+		out.writeLong(expireAt);
+		out.writeInt(data.getFlag());
+		out.writeInt(data.getData().length);
+		out.write(data.getData());
+		count++;
+	}
+
+	/**
+	 * Returns the number of items written.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Finish the snapshot and move it in place of the previous one.
+	 */
+	public void commit() throws IOException {
+		out.writeBoolean(false);
+		closed = true;
+		out.close();
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			out.close();
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package com.kaisen.common.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+
+/**
+ * Metadata stored in front of a value loaded by
+ * {@link BaseCache#getOrLoad(String, int, CacheLoader)} or stored with tags.
+ *
+ * An enveloped item carries the {@link #FLAG} bit,its data is a header
+ * followed by the value as encoded by the transcoder of the cache:
+ *
+ * <pre>
+ * version(1) flag(4) createdAt(8) softExpireAt(8) loadMillis(4)
+ * tagCount(2) [tagLength(2) tag(UTF-8) generation(8)]* data
+ * </pre>
+ *
+ * Version 1 envelopes have no loadMillis,version 2 envelopes have no tags.
+ */
+final class ValueEnvelope {
+	/** Flag of enveloped items,above the bits used by the transcoders */
+	static final int FLAG = 1 << 16;
+
+	private static final byte VERSION = 3;
+
+	private static final int HEADER_SIZE = 1 + 4 + 8 + 8 + 4 + 2;
+
+	private final CachedData data;
+	private final long createdAt;
+	private final long softExpireAt;
+	private final int loadMillis;
+	private final Map<String, Long> tags;
+
+	private ValueEnvelope(CachedData data, long createdAt, long softExpireAt,
+			int loadMillis, Map<String, Long> tags) {
+		this.data = data;
+		this.createdAt = createdAt;
+		this.softExpireAt = softExpireAt;
+		this.loadMillis = loadMillis;
+		this.tags = tags;
+	}
+
+	/**
+	 * The value as encoded by the transcoder of the cache.
+	 */
+	CachedData getData() {
+		return data;
+	}
+
+	/**
+	 * When the value was stored,in milliseconds.
+	 */
+	long getCreatedAt() {
+		return createdAt;
+	}
+
+	/**
+	 * When the value becomes stale and should be reloaded,in milliseconds.
+	 */
+	long getSoftExpireAt() {
+		return softExpireAt;
+	}
+
+	/**
+	 * How long the loader took to compute the value,in milliseconds.
+	 */
+	int getLoadMillis() {
+		return loadMillis;
+	}
+
+	/**
+	 * The tags of the value,with their generations when it was stored.
+	 */
+	Map<String, Long> getTags() {
+		return tags;
+	}
+
+	boolean isStale(long now) {
+		return now >= softExpireAt;
+	}
+
+	/**
+	 * Probabilistic early expiration (XFetch):the value is treated as stale
+	 * ahead of its soft expiry with a probability rising as the expiry gets
+	 * closer,and the sooner the longer the value took to load.
+	 * 
+	 * @param now
+	 * @param beta
+	 *            greater than 1 favours earlier refreshes,0 disables early
+	 *            expiration
+	 */
+	boolean isStale(long now, double beta) {
+		if (beta <= 0 || loadMillis <= 0) {
+			return isStale(now);
+		}
+		double random = 1 - ThreadLocalRandom.current().nextDouble();
+		return now - loadMillis * beta * Math.log(random) >= softExpireAt;
+	}
+
+	static boolean isEnveloped(CachedData data) {
+		return (data.getFlag() & FLAG) != 0;
+	}
+
+	/**
+	 * Wrap the encoded value into an envelope.
+	 * 
+	 * @param tags
+	 *            the generations of the tags of the value,may be empty
+	 */
+	static CachedData wrap(CachedData data, long createdAt,
+			long softExpireAt, int loadMillis, Map<String, Long> tags) {
+		byte[] payload = data.getData();
+		int size = HEADER_SIZE + payload.length;
+		byte[][] names = new byte[tags.size()][];
+		int i = 0;
+		for (String tag : tags.keySet()) {
+			names[i] = tag.getBytes(StandardCharsets.UTF_8);
+			size += 2 + names[i].length + 8;
+			i++;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(VERSION).putInt(data.getFlag()).putLong(createdAt)
+				.putLong(softExpireAt).putInt(loadMillis)
+				.putShort((short) names.length);
+		i = 0;
+		for (Long generation : tags.values()) {
+			buffer.putShort((short) names[i].length).put(names[i])
+					.putLong(generation);
+			i++;
+		}
+		buffer.put(payload);
+		byte[] bytes = buffer.array();
+		return new CachedData(FLAG, bytes, bytes.length, -1);
+	}
+
+	/**
+	 * Returns the envelope of the item,or null if the item is not enveloped.
+	 */
+	static ValueEnvelope unwrap(CachedData data) {
+		if (!isEnveloped(data)) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(data.getData());
+		byte version = buffer.get();
+		if (version < 1 || version > VERSION) {
+			throw new IllegalArgumentException("Unknown envelope version "
+					+ version);
+		}
+		int flag = buffer.getInt();
+		long createdAt = buffer.getLong();
+		long softExpireAt = buffer.getLong();
+		int loadMillis = version >= 2 ? buffer.getInt() : 0;
+		Map<String, Long> tags = Collections.emptyMap();
+		int tagCount = version >= 3 ? buffer.getShort() & 0xffff : 0;
+		if (tagCount > 0) {
+			tags = new LinkedHashMap<String, Long>(tagCount * 2);
+			for (int i = 0; i < tagCount; i++) {
+				byte[] name = new byte[buffer.getShort() & 0xffff];
+				buffer.get(name);
+				tags.put(new String(name, StandardCharsets.UTF_8),
+						buffer.getLong());
+			}
+		}
+		byte[] payload = new byte[buffer.remaining()];
+		buffer.get(payload);
+		return new ValueEnvelope(new CachedData(flag, payload,
+				payload.length, data.getCas()), createdAt, softExpireAt,
+				loadMillis, tags);
+	}
+}
@@ -0,0 +1,436 @@
+package com.kaisen.common.cache.embedded;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.kaisen.common.cache.embedded.EmbeddedMemcachedServer.Fault;
+import com.kaisen.common.cache.embedded.ItemStore.Item;
+import com.kaisen.common.cache.embedded.ItemStore.StoreResult;
+
+/**
+ * Serves the text protocol on one connection of an
+ * {@link EmbeddedMemcachedServer}.Commands are processed in order,replies
+ * of pipelined commands are flushed together once no more input is
+ * buffered.
+ *
+ * Keys are read and written as ISO-8859-1,so any key bytes are echoed back
+ * unchanged.
+ */
+final class ConnectionHandler implements Runnable {
+	private static final Logger logger = LoggerFactory
+			.getLogger(ConnectionHandler.class);
+
+	/** Counters reported by the stats command besides the item counts */
+	static final List<String> COUNTERS = Arrays.asList("total_connections",
+			"cmd_get", "cmd_set", "cmd_touch", "cmd_flush", "get_hits",
+			"get_misses", "delete_hits", "delete_misses", "incr_hits",
+			"incr_misses", "decr_hits", "decr_misses", "cas_hits",
+			"cas_misses", "cas_badval", "touch_hits", "touch_misses");
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final int MAX_LINE_LENGTH = 8192;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final EmbeddedMemcachedServer server;
+	private final ItemStore store;
+	private final Socket socket;
+	private final ByteArrayOutputStream reply = new ByteArrayOutputStream(
+			1024);
+	private final List<String> tokens = new ArrayList<String>();
+	private byte[] lineBuffer = new byte[256];
+	private InputStream in;
+	private boolean noreply;
+
+	ConnectionHandler(EmbeddedMemcachedServer server, Socket socket) {
+		this.server = server;
+		this.store = server.getStore();
+		this.socket = socket;
+	}
+
+	@Override
+	public void run() {
+		try {
+			in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+			OutputStream out = new BufferedOutputStream(
+					socket.getOutputStream(), BUFFER_SIZE);
+			String line;
+			while ((line = readLine()) != null) {
+				reply.reset();
+				noreply = false;
+				if (!process(line)) {
+					break;
+				}
+				if (!noreply) {
+					Fault fault = server.nextFault();
+					if (fault == Fault.DROP) {
+						break;
+					}
+					if (fault == Fault.ERROR) {
+						reply.reset();
+						write("SERVER_ERROR injected fault");
+					}
+					reply.writeTo(out);
+				}
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			logger.debug("", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			server.closed(socket);
+		}
+	}
+
+	/**
+	 * Process a command line and write its reply.
+	 *
+	 * @return false if the connection must be closed
+	 */
+	private boolean process(String line) throws IOException {
+		tokenize(line);
+		if (tokens.isEmpty()) {
+			write("ERROR");
+			return true;
+		}
+		String command = tokens.get(0);
+		switch (command) {
+		case "get":
+			get(false);
+			break;
+		case "gets":
+			get(true);
+			break;
+		case "set":
+		case "add":
+		case "replace":
+		case "append":
+		case "prepend":
+		case "cas":
+			return store(command);
+		case "delete":
+			delete();
+			break;
+		case "incr":
+		case "decr":
+			incr(command.equals("incr"));
+			break;
+		case "touch":
+			touch();
+			break;
+		case "flush_all":
+			flushAll();
+			break;
+		case "stats":
+			stats();
+			break;
+		case "version":
+			write("VERSION " + EmbeddedMemcachedServer.VERSION);
+			break;
+		case "verbosity":
+			noreply = isNoreply(2);
+			write("OK");
+			break;
+		case "quit":
+			return false;
+		default:
+			write("ERROR");
+		}
+		return true;
+	}
+
+	private void get(boolean withCas) throws IOException {
+		if (tokens.size() < 2) {
+			write("ERROR");
+			return;
+		}
+		for (int i = 1; i < tokens.size(); i++) {
+			String key = tokens.get(i);
+			Item item = store.get(key);
+			server.count("cmd_get");
+			if (item == null) {
+				server.count("get_misses");
+				continue;
+			}
+			server.count("get_hits");
+			StringBuilder header = new StringBuilder(key.length() + 40);
+			header.append("VALUE ").append(key).append(' ')
+					.append(item.flags & 0xffffffffL).append(' ')
+					.append(item.data.length);
+			if (withCas) {
+				header.append(' ').append(item.cas);
+			}
+			write(header.toString());
+			reply.write(item.data);
+			reply.write(CRLF);
+		}
+		write("END");
+	}
+
+	/**
+	 * @return false if the data block is malformed and the connection must be
+	 *         closed
+	 */
+	private boolean store(String command) throws IOException {
+		boolean cas = command.equals("cas");
+		int argumentCount = cas ? 6 : 5;
+		if (tokens.size() != argumentCount
+				&& tokens.size() != argumentCount + 1) {
+			write("ERROR");
+			return true;
+		}
+		noreply = isNoreply(argumentCount);
+		String key = tokens.get(1);
+		int flags;
+		long exptime;
+		int length;
+		long casUnique = 0;
+		try {
+			flags = (int) Long.parseLong(tokens.get(2));
+			exptime = Long.parseLong(tokens.get(3));
+			length = Integer.parseInt(tokens.get(4));
+			if (cas) {
+				casUnique = Long.parseLong(tokens.get(5));
+			}
+		} catch (NumberFormatException e) {
+			write("CLIENT_ERROR bad command line format");
+			return true;
+		}
+		if (length < 0) {
+			write("CLIENT_ERROR bad command line format");
+			return true;
+		}
+		if (length > server.getMaxItemSize()) {
+			skip(length + CRLF.length);
+			write("SERVER_ERROR object too large for cache");
+			return true;
+		}
+		byte[] data = new byte[length];
+		readFully(data);
+		if (in.read() != '\r' || in.read() != '\n') {
+			noreply = false;
+			write("CLIENT_ERROR bad data chunk");
+			return false;
+		}
+		server.count("cmd_set");
+		StoreResult result;
+		switch (command) {
+		case "set":
+			result = store.set(key, data, flags, exptime);
+			break;
+		case "add":
+			result = store.add(key, data, flags, exptime);
+			break;
+		case "replace":
+			result = store.replace(key, data, flags, exptime);
+			break;
+		case "append":
+			result = store.concat(key, data, true);
+			break;
+		case "prepend":
+			result = store.concat(key, data, false);
+			break;
+		default:
+			result = store.cas(key, data, flags, exptime, casUnique);
+			server.count(result == StoreResult.STORED ? "cas_hits"
+					: result == StoreResult.EXISTS ? "cas_badval"
+							: "cas_misses");
+		}
+		write(result.name());
+		return true;
+	}
+
+	private void delete() throws IOException {
+		if (tokens.size() < 2 || tokens.size() > 4) {
+			write("ERROR");
+			return;
+		}
+		noreply = isNoreply(tokens.size() - 1);
+		if (store.delete(tokens.get(1))) {
+			server.count("delete_hits");
+			write("DELETED");
+		} else {
+			server.count("delete_misses");
+			write("NOT_FOUND");
+		}
+	}
+
+	private void incr(boolean increment) throws IOException {
+		if (tokens.size() != 3 && tokens.size() != 4) {
+			write("ERROR");
+			return;
+		}
+		noreply = isNoreply(3);
+		String name = increment ? "incr" : "decr";
+		BigInteger delta;
+		try {
+			delta = new BigInteger(tokens.get(2));
+		} catch (NumberFormatException e) {
+			delta = null;
+		}
+		if (delta == null || delta.signum() < 0
+				|| delta.compareTo(ItemStore.MAX_UNSIGNED) > 0) {
+			write("CLIENT_ERROR invalid numeric delta argument");
+			return;
+		}
+		String value;
+		try {
+			value = store.incr(tokens.get(1), delta, increment);
+		} catch (NumberFormatException e) {
+			write("CLIENT_ERROR cannot increment or decrement non-numeric value");
+			return;
+		}
+		if (value == null) {
+			server.count(name + "_misses");
+			write("NOT_FOUND");
+		} else {
+			server.count(name + "_hits");
+			write(value);
+		}
+	}
+
+	private void touch() throws IOException {
+		if (tokens.size() != 3 && tokens.size() != 4) {
+			write("ERROR");
+			return;
+		}
+		noreply = isNoreply(3);
+		long exptime;
+		try {
+			exptime = Long.parseLong(tokens.get(2));
+		} catch (NumberFormatException e) {
+			write("CLIENT_ERROR invalid exptime argument");
+			return;
+		}
+		server.count("cmd_touch");
+		if (store.touch(tokens.get(1), exptime)) {
+			server.count("touch_hits");
+			write("TOUCHED");
+		} else {
+			server.count("touch_misses");
+			write("NOT_FOUND");
+		}
+	}
+
+	private void flushAll() throws IOException {
+		noreply = isNoreply(tokens.size() - 1);
+		int argumentCount = tokens.size() - (noreply ? 1 : 0);
+		long delay = 0;
+		if (argumentCount > 1) {
+			try {
+				delay = Long.parseLong(tokens.get(1));
+			} catch (NumberFormatException e) {
+				write("CLIENT_ERROR bad command line format");
+				return;
+			}
+		}
+		server.count("cmd_flush");
+		store.flushAll(delay);
+		write("OK");
+	}
+
+	private void stats() throws IOException {
+		if (tokens.size() == 1) {
+			for (Map.Entry<String, String> stat : server.getStats()
+					.entrySet()) {
+				write("STAT " + stat.getKey() + " " + stat.getValue());
+			}
+		}
+		write("END");
+	}
+
+	private boolean isNoreply(int index) {
+		return tokens.size() > index && "noreply".equals(tokens.get(index));
+	}
+
+	private void write(String line) throws IOException {
+		reply.write(line.getBytes(StandardCharsets.ISO_8859_1));
+		reply.write(CRLF);
+	}
+
+	private void tokenize(String line) {
+		tokens.clear();
+		int start = -1;
+		for (int i = 0, length = line.length(); i <= length; i++) {
+			if (i == length || line.charAt(i) == ' ') {
+				if (start >= 0) {
+					tokens.add(line.substring(start, i));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next line without its line end,or null at the end of the
+	 * stream.
+	 */
+	private String readLine() throws IOException {
+		int length = 0;
+		for (;;) {
+			int b = in.read();
+			if (b < 0) {
+				return null;
+			}
+			if (b == '\n') {
+				break;
+			}
+			if (length == MAX_LINE_LENGTH) {
+				throw new IOException("line too long");
+			}
+			if (length == lineBuffer.length) {
+				lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+			}
+			lineBuffer[length++] = (byte) b;
+		}
+		if (length > 0 && lineBuffer[length - 1] == '\r') {
+			length--;
+		}
+		return new String(lineBuffer, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	private void readFully(byte[] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			int read = in.read(data, offset, data.length - offset);
+			if (read < 0) {
+				throw new IOException("connection closed in a data block");
+			}
+			offset += read;
+		}
+	}
+
+	private void skip(long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new IOException("connection closed in a data block");
+				}
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+}
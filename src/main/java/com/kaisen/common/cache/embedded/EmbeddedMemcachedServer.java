@@ -0,0 +1,371 @@
+package com.kaisen.common.cache.embedded;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An in-JVM memcached speaking the text protocol,to test and benchmark
+ * caches end to end without a memcached installation:
+ *
+ * <pre>
+ * EmbeddedMemcachedServer server = new EmbeddedMemcachedServer();
+ * server.start();
+ * MemcachedClient client = new XMemcachedClient(server.getAddress());
+ * </pre>
+ *
+ * It supports get,gets,set,add,replace,append,prepend,cas,delete,incr,
+ * decr,touch,flush_all,stats,version,verbosity and quit.Items are kept on
+ * the heap and never evicted.
+ *
+ * Faults can be injected at any time:a latency with a random jitter before
+ * each reply,and rates of replies failing with SERVER_ERROR,of connections
+ * dropped instead of replying and of replies held until the client times
+ * out.Dropped and held replies close the connection,since a text protocol
+ * client cannot match the replies that follow a lost one.
+ */
+public class EmbeddedMemcachedServer {
+	private static final Logger logger = LoggerFactory
+			.getLogger(EmbeddedMemcachedServer.class);
+
+	static final String VERSION = "1.4.25-embedded";
+
+	private final int requestedPort;
+	private final ItemStore store = new ItemStore();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final Set<Socket> sockets = Collections
+			.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	private volatile long latencyMillis;
+	private volatile long latencyJitterMillis;
+	private volatile double errorRate;
+	private volatile double dropRate;
+	private volatile double timeoutRate;
+	private volatile long timeoutMillis = 10000;
+	private volatile int maxItemSize = 1024 * 1024;
+
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+	private long startedAt;
+
+	/**
+	 * Creates a server listening on a free port of the loopback interface.
+	 */
+	public EmbeddedMemcachedServer() {
+		this(0);
+	}
+
+	/**
+	 * @param port
+	 *            the port to listen to on the loopback interface,0 for any
+	 *            free port
+	 */
+	public EmbeddedMemcachedServer(int port) {
+		this.requestedPort = port;
+	}
+
+	public synchronized void start() throws IOException {
+		if (serverSocket != null) {
+			return;
+		}
+		serverSocket = new ServerSocket(requestedPort, 128,
+				InetAddress.getLoopbackAddress());
+		startedAt = System.currentTimeMillis();
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "embedded-memcached-"
+						+ threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ServerSocket listening = serverSocket;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				accept(listening);
+			}
+		});
+		logger.info("Embedded memcached listening on " + getAddress());
+	}
+
+	/**
+	 * Stop listening and close all the connections.The items are kept,a
+	 * restarted server serves them again.
+	 */
+	public synchronized void stop() {
+		if (serverSocket == null) {
+			return;
+		}
+		close(serverSocket);
+		for (Socket socket : sockets) {
+			close(socket);
+		}
+		executor.shutdownNow();
+		serverSocket = null;
+		executor = null;
+	}
+
+	public synchronized boolean isRunning() {
+		return serverSocket != null;
+	}
+
+	public synchronized int getPort() {
+		if (serverSocket == null) {
+			throw new IllegalStateException("server is not running");
+		}
+		return serverSocket.getLocalPort();
+	}
+
+	public InetSocketAddress getAddress() {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				getPort());
+	}
+
+	/**
+	 * Remove all the items at once.
+	 */
+	public void flushAll() {
+		store.flushAll(0);
+	}
+
+	public int getItemCount() {
+		return store.size();
+	}
+
+	public long getLatency() {
+		return latencyMillis;
+	}
+
+	/**
+	 * Delay each reply by the latency,in milliseconds.
+	 */
+	public void setLatency(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	public long getLatencyJitter() {
+		return latencyJitterMillis;
+	}
+
+	/**
+	 * Add a random delay between 0 and the jitter to the latency,in
+	 * milliseconds.
+	 */
+	public void setLatencyJitter(long latencyJitterMillis) {
+		this.latencyJitterMillis = latencyJitterMillis;
+	}
+
+	public double getErrorRate() {
+		return errorRate;
+	}
+
+	/**
+	 * Share of the commands answered with SERVER_ERROR,between 0 and 1.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	public double getDropRate() {
+		return dropRate;
+	}
+
+	/**
+	 * Share of the commands whose connection is closed instead of replying,
+	 * between 0 and 1.
+	 */
+	public void setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+	}
+
+	public double getTimeoutRate() {
+		return timeoutRate;
+	}
+
+	/**
+	 * Share of the commands whose reply is held for the timeout before the
+	 * connection is closed,between 0 and 1.
+	 */
+	public void setTimeoutRate(double timeoutRate) {
+		this.timeoutRate = timeoutRate;
+	}
+
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * How long replies are held by {@link #setTimeoutRate(double)},in
+	 * milliseconds.The default is 10000,longer than usual client timeouts.
+	 */
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public int getMaxItemSize() {
+		return maxItemSize;
+	}
+
+	/**
+	 * Largest value accepted,in bytes.Greater values are refused with
+	 * SERVER_ERROR as memcached does.The default is 1 MB.
+	 */
+	public void setMaxItemSize(int maxItemSize) {
+		this.maxItemSize = maxItemSize;
+	}
+
+	/**
+	 * Clear the injected faults.
+	 */
+	public void resetFaults() {
+		latencyMillis = 0;
+		latencyJitterMillis = 0;
+		errorRate = 0;
+		dropRate = 0;
+		timeoutRate = 0;
+	}
+
+	/**
+	 * Returns the counters reported by the stats command.
+	 */
+	public Map<String, String> getStats() {
+		Map<String, String> stats = new LinkedHashMap<String, String>();
+		long now = System.currentTimeMillis();
+		stats.put("pid", "0");
+		stats.put("uptime", String.valueOf((now - startedAt) / 1000));
+		stats.put("time", String.valueOf(now / 1000));
+		stats.put("version", VERSION);
+		stats.put("curr_connections", String.valueOf(sockets.size()));
+		stats.put("curr_items", String.valueOf(store.size()));
+		stats.put("total_items", String.valueOf(store.getTotalItems()));
+		for (String name : ConnectionHandler.COUNTERS) {
+			stats.put(name, String.valueOf(getCount(name)));
+		}
+		return stats;
+	}
+
+	ItemStore getStore() {
+		return store;
+	}
+
+	void count(String name) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	long getCount(String name) {
+		AtomicLong counter = counters.get(name);
+		return counter == null ? 0 : counter.get();
+	}
+
+	/**
+	 * Pick the fault of the next reply and wait for the injected latency.
+	 */
+	Fault nextFault() throws InterruptedException {
+		long latency = latencyMillis;
+		long jitter = latencyJitterMillis;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (jitter > 0) {
+			latency += random.nextLong(jitter + 1);
+		}
+		if (latency > 0) {
+			Thread.sleep(latency);
+		}
+		double value = random.nextDouble();
+		if ((value -= dropRate) < 0) {
+			return Fault.DROP;
+		}
+		if ((value -= timeoutRate) < 0) {
+			Thread.sleep(timeoutMillis);
+			return Fault.DROP;
+		}
+		if (value - errorRate < 0) {
+			return Fault.ERROR;
+		}
+		return Fault.NONE;
+	}
+
+	enum Fault {
+		NONE, ERROR, DROP
+	}
+
+	private void accept(ServerSocket listening) {
+		while (!listening.isClosed()) {
+			Socket socket;
+			try {
+				socket = listening.accept();
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				if (!listening.isClosed()) {
+					logger.error("", e);
+				}
+				return;
+			}
+			count("total_connections");
+			sockets.add(socket);
+			try {
+				executor.execute(new ConnectionHandler(this, socket));
+			} catch (RuntimeException e) {
+				sockets.remove(socket);
+				close(socket);
+			}
+		}
+	}
+
+	void closed(Socket socket) {
+		sockets.remove(socket);
+		close(socket);
+	}
+
+	private static void close(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			logger.debug("", e);
+		}
+	}
+
+	/**
+	 * Run a server until the JVM is stopped.
+	 *
+	 * @param args
+	 *            the port,11211 by default
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 11211;
+		EmbeddedMemcachedServer server = new EmbeddedMemcachedServer(port);
+		server.start();
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
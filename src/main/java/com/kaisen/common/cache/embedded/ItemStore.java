@@ -0,0 +1,235 @@
+package com.kaisen.common.cache.embedded;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The items of an {@link EmbeddedMemcachedServer},with the expiration and
+ * cas semantics of memcached.Items are never evicted.
+ *
+ * Thread safe,updates of an item are compare and swap loops on the map.
+ */
+final class ItemStore {
+	/** Result of a storage command */
+	enum StoreResult {
+		STORED, NOT_STORED, EXISTS, NOT_FOUND
+	}
+
+	private static final long MAX_RELATIVE_EXPIRATION = 60 * 60 * 24 * 30;
+
+	static final BigInteger MAX_UNSIGNED = BigInteger.ONE.shiftLeft(64)
+			.subtract(BigInteger.ONE);
+
+	static final class Item {
+		final byte[] data;
+		final int flags;
+		final long expireAt;
+		final long cas;
+		final long storedAt;
+
+		Item(byte[] data, int flags, long expireAt, long cas, long storedAt) {
+			this.data = data;
+			this.flags = flags;
+			this.expireAt = expireAt;
+			this.cas = cas;
+			this.storedAt = storedAt;
+		}
+	}
+
+	private final ConcurrentMap<String, Item> items = new ConcurrentHashMap<String, Item>();
+	private final AtomicLong casCounter = new AtomicLong();
+	private final AtomicLong totalItems = new AtomicLong();
+	private volatile long flushAt = Long.MIN_VALUE;
+
+	/**
+	 * Returns the live item of the key,or null.
+	 */
+	Item get(String key) {
+		Item item = items.get(key);
+		if (item != null && isExpired(item, System.currentTimeMillis())) {
+			items.remove(key, item);
+			return null;
+		}
+		return item;
+	}
+
+	StoreResult set(String key, byte[] data, int flags, long exptime) {
+		items.put(key, newItem(data, flags, exptime));
+		totalItems.incrementAndGet();
+		return StoreResult.STORED;
+	}
+
+	StoreResult add(String key, byte[] data, int flags, long exptime) {
+		Item item = newItem(data, flags, exptime);
+		for (;;) {
+			Item current = get(key);
+			if (current != null) {
+				return StoreResult.NOT_STORED;
+			}
+			if (items.putIfAbsent(key, item) == null) {
+				totalItems.incrementAndGet();
+				return StoreResult.STORED;
+			}
+		}
+	}
+
+	StoreResult replace(String key, byte[] data, int flags, long exptime) {
+		StoreResult result = cas(key, data, flags, exptime, 0);
+		return result == StoreResult.STORED ? result : StoreResult.NOT_STORED;
+	}
+
+	/**
+	 * @param casUnique
+	 *            the cas value the item must have,0 to accept any
+	 */
+	StoreResult cas(String key, byte[] data, int flags, long exptime,
+			long casUnique) {
+		Item item = newItem(data, flags, exptime);
+		for (;;) {
+			Item current = get(key);
+			if (current == null) {
+				return StoreResult.NOT_FOUND;
+			}
+			if (casUnique != 0 && current.cas != casUnique) {
+				return StoreResult.EXISTS;
+			}
+			if (items.replace(key, current, item)) {
+				totalItems.incrementAndGet();
+				return StoreResult.STORED;
+			}
+		}
+	}
+
+	/**
+	 * Append or prepend the data to the item,keeping its flags and
+	 * expiration.
+	 */
+	StoreResult concat(String key, byte[] data, boolean append) {
+		for (;;) {
+			Item current = get(key);
+			if (current == null) {
+				return StoreResult.NOT_STORED;
+			}
+			byte[] joined = new byte[current.data.length + data.length];
+			if (append) {
+				System.arraycopy(current.data, 0, joined, 0,
+						current.data.length);
+				System.arraycopy(data, 0, joined, current.data.length,
+						data.length);
+			} else {
+				System.arraycopy(data, 0, joined, 0, data.length);
+				System.arraycopy(current.data, 0, joined, data.length,
+						current.data.length);
+			}
+			Item item = new Item(joined, current.flags, current.expireAt,
+					casCounter.incrementAndGet(), System.currentTimeMillis());
+			if (items.replace(key, current, item)) {
+				return StoreResult.STORED;
+			}
+		}
+	}
+
+	/**
+	 * Returns the new value,an unsigned 64-bit number,or null if the item is
+	 * missing.Decrementing below 0 yields 0,incrementing wraps around at
+	 * 2^64.
+	 * 
+	 * @throws NumberFormatException
+	 *             if the item is not a number
+	 */
+	String incr(String key, BigInteger delta, boolean increment) {
+		for (;;) {
+			Item current = get(key);
+			if (current == null) {
+				return null;
+			}
+			BigInteger value = new BigInteger(new String(current.data,
+					StandardCharsets.US_ASCII).trim());
+			if (value.signum() < 0 || value.compareTo(MAX_UNSIGNED) > 0) {
+				throw new NumberFormatException("not an unsigned 64-bit number");
+			}
+			if (increment) {
+				value = value.add(delta).and(MAX_UNSIGNED);
+			} else {
+				value = value.compareTo(delta) < 0 ? BigInteger.ZERO : value
+						.subtract(delta);
+			}
+			String result = value.toString();
+			byte[] data = result.getBytes(StandardCharsets.US_ASCII);
+			Item item = new Item(data, current.flags, current.expireAt,
+					casCounter.incrementAndGet(), System.currentTimeMillis());
+			if (items.replace(key, current, item)) {
+				return result;
+			}
+		}
+	}
+
+	boolean touch(String key, long exptime) {
+		for (;;) {
+			Item current = get(key);
+			if (current == null) {
+				return false;
+			}
+			Item item = new Item(current.data, current.flags,
+					expireAt(exptime), current.cas, current.storedAt);
+			if (items.replace(key, current, item)) {
+				return true;
+			}
+		}
+	}
+
+	boolean delete(String key) {
+		Item item = get(key);
+		return item != null && items.remove(key, item);
+	}
+
+	/**
+	 * Invalidate all the items stored before the flush,after the delay.
+	 */
+	void flushAll(long delaySeconds) {
+		if (delaySeconds <= 0) {
+			items.clear();
+		} else {
+			flushAt = System.currentTimeMillis() + delaySeconds * 1000L;
+		}
+	}
+
+	int size() {
+		return items.size();
+	}
+
+	long getTotalItems() {
+		return totalItems.get();
+	}
+
+	private Item newItem(byte[] data, int flags, long exptime) {
+		return new Item(data, flags, expireAt(exptime),
+				casCounter.incrementAndGet(), System.currentTimeMillis());
+	}
+
+	/**
+	 * Expiration times up to 30 days are relative,greater ones are unix
+	 * times,negative ones expire at once.
+	 */
+	private static long expireAt(long exptime) {
+		if (exptime == 0) {
+			return Long.MAX_VALUE;
+		}
+		if (exptime < 0) {
+			return Long.MIN_VALUE;
+		}
+		if (exptime > MAX_RELATIVE_EXPIRATION) {
+			return exptime * 1000L;
+		}
+		return System.currentTimeMillis() + exptime * 1000L;
+	}
+
+	private boolean isExpired(Item item, long now) {
+		long flush = flushAt;
+		return now >= item.expireAt
+				|| (item.storedAt <= flush && now >= flush);
+	}
+}
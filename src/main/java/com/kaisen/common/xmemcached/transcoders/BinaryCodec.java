@@ -0,0 +1,25 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+/**
+ * Encodes the values of one class for {@link BinaryTranscoder}.
+ *
+ * @param <T>
+ *            the class handled by this codec
+ */
+public interface BinaryCodec<T> {
+	/**
+	 * Write the value.Nested objects can be written with
+	 * {@link BinaryTranscoder#writeObject(BinaryOutput, Object)}.
+	 */
+	void write(BinaryOutput out, T value);
+
+	/**
+	 * Read a value written by this codec.
+	 *
+	 * @param in
+	 * @param version
+	 *            the codec version the value was written with,so that a codec
+	 *            can keep reading values written before its format changed
+	 */
+	T read(BinaryInput in, int version);
+}
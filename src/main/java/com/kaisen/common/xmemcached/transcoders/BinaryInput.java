@@ -0,0 +1,113 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the encodings written by {@link BinaryOutput}.
+ */
+public final class BinaryInput {
+	private final byte[] buf;
+	private final int limit;
+	private int position;
+
+	public BinaryInput(byte[] buf) {
+		this(buf, 0, buf.length);
+	}
+
+	public BinaryInput(byte[] buf, int offset, int length) {
+		this.buf = buf;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	private void require(int length) {
+		if (length < 0 || limit - position < length) {
+			throw new IllegalArgumentException("Truncated binary value");
+		}
+	}
+
+	public int readByte() {
+		require(1);
+		return buf[position++];
+	}
+
+	public boolean readBoolean() {
+		return readByte() != 0;
+	}
+
+	public int readVarInt() {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public long readVarLong() {
+		long result = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	public int readSignedVarInt() {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long readSignedVarLong() {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public float readFloat() {
+		return Float.intBitsToFloat(readFixedInt());
+	}
+
+	public double readDouble() {
+		long high = readFixedInt() & 0xFFFFFFFFL;
+		long low = readFixedInt() & 0xFFFFFFFFL;
+		return Double.longBitsToDouble((high << 32) | low);
+	}
+
+	private int readFixedInt() {
+		require(4);
+		int value = ((buf[position] & 0xFF) << 24)
+				| ((buf[position + 1] & 0xFF) << 16)
+				| ((buf[position + 2] & 0xFF) << 8)
+				| (buf[position + 3] & 0xFF);
+		position += 4;
+		return value;
+	}
+
+	public byte[] readByteArray() {
+		int length = readVarInt();
+		require(length);
+		byte[] bytes = new byte[length];
+		System.arraycopy(buf, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	public String readString() {
+		int length = readVarInt();
+		require(length);
+		String value = new String(buf, position, length,
+				StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	public int remaining() {
+		return limit - position;
+	}
+}
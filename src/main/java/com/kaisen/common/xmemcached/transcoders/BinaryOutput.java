@@ -0,0 +1,152 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with the primitive encodings used by
+ * {@link BinaryTranscoder}.Integers are written as base 128 varints,signed
+ * ones zigzag encoded first so that small negative numbers stay short.
+ */
+public final class BinaryOutput {
+	private byte[] buf;
+	private int count;
+
+	public BinaryOutput(int initialCapacity) {
+		this.buf = new byte[Math.max(initialCapacity, 16)];
+	}
+
+	private void ensureCapacity(int extra) {
+		int required = count + extra;
+		if (required > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, required));
+		}
+	}
+
+	public void writeByte(int b) {
+		ensureCapacity(1);
+		buf[count++] = (byte) b;
+	}
+
+	public void writeBytes(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, buf, count, length);
+		count += length;
+	}
+
+	public void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+
+	/**
+	 * Write an unsigned varint,negative values take five bytes.
+	 */
+	public void writeVarInt(int value) {
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	/**
+	 * Write an unsigned varint,negative values take ten bytes.
+	 */
+	public void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buf[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buf[count++] = (byte) value;
+	}
+
+	public void writeSignedVarInt(int value) {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	public void writeSignedVarLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	public void writeFloat(float value) {
+		writeFixedInt(Float.floatToIntBits(value));
+	}
+
+	public void writeDouble(double value) {
+		long bits = Double.doubleToLongBits(value);
+		writeFixedInt((int) (bits >>> 32));
+		writeFixedInt((int) bits);
+	}
+
+	private void writeFixedInt(int value) {
+		ensureCapacity(4);
+		buf[count++] = (byte) (value >>> 24);
+		buf[count++] = (byte) (value >>> 16);
+		buf[count++] = (byte) (value >>> 8);
+		buf[count++] = (byte) value;
+	}
+
+	/**
+	 * Write a length prefixed byte array.
+	 */
+	public void writeByteArray(byte[] bytes) {
+		writeVarInt(bytes.length);
+		writeBytes(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Write a string as its UTF-8 byte length followed by the UTF-8 bytes.
+	 */
+	public void writeString(String value) {
+		int length = value.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				utf8Length += 4;
+				i++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+		writeVarInt(utf8Length);
+		ensureCapacity(utf8Length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buf[count++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[count++] = (byte) (0xC0 | (c >> 6));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+				buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				buf[count++] = (byte) (0xE0 | (c >> 12));
+				buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns a copy of the written bytes.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf, count);
+	}
+}
@@ -0,0 +1,434 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.Feature;
+
+/**
+ * Compact binary transcoder,a drop-in replacement of
+ * {@link FastJsonTranscoder}.
+ *
+ * A value is stored as a format header followed by the value itself.Every
+ * value starts with a varint type id:strings,numbers,dates,byte arrays,lists,
+ * sets and maps have built-in encodings,registered classes are written by
+ * their {@link BinaryCodec} after the codec version,and anything else falls
+ * back to JSON.Integers are varints,so numeric data is much smaller and faster
+ * to read than its JSON text.
+ *
+ * Classes are registered with a stable type id of at least
+ * {@value #MIN_USER_TYPE_ID},either with their own codec or with a codec
+ * generated from their fields.Values written by {@link FastJsonTranscoder} are
+ * still readable,which allows switching a cache over without flushing it.
+ */
+public class BinaryTranscoder implements Transcoder<Object> {
+	private static final Logger logger = LoggerFactory
+			.getLogger(BinaryTranscoder.class);
+
+	/** First byte of every binary value,it never starts a JSON text */
+	private static final int MAGIC = 0xB7;
+	private static final int FORMAT_VERSION = 1;
+
+	/** Type ids below this value are reserved for built-in encodings */
+	public static final int MIN_USER_TYPE_ID = 64;
+
+	private static final int NULL = 0;
+	private static final int JSON_VALUE = 1;
+	private static final int STRING = 2;
+	private static final int INTEGER = 3;
+	private static final int LONG = 4;
+	private static final int DOUBLE = 5;
+	private static final int FLOAT = 6;
+	private static final int BOOLEAN = 7;
+	private static final int BYTES = 8;
+	private static final int DATE = 9;
+	private static final int LIST = 10;
+	private static final int MAP = 11;
+	private static final int SET = 12;
+	private static final int SHORT = 13;
+	private static final int BYTE = 14;
+	private static final int BIG_DECIMAL = 15;
+	private static final int BIG_INTEGER = 16;
+	private static final int CHARACTER = 17;
+
+	private static final Map<Class<?>, Integer> BUILT_IN_TYPES = new HashMap<Class<?>, Integer>();
+	static {
+		BUILT_IN_TYPES.put(String.class, STRING);
+		BUILT_IN_TYPES.put(Integer.class, INTEGER);
+		BUILT_IN_TYPES.put(Long.class, LONG);
+		BUILT_IN_TYPES.put(Double.class, DOUBLE);
+		BUILT_IN_TYPES.put(Float.class, FLOAT);
+		BUILT_IN_TYPES.put(Boolean.class, BOOLEAN);
+		BUILT_IN_TYPES.put(byte[].class, BYTES);
+		BUILT_IN_TYPES.put(Date.class, DATE);
+		BUILT_IN_TYPES.put(Short.class, SHORT);
+		BUILT_IN_TYPES.put(Byte.class, BYTE);
+		BUILT_IN_TYPES.put(BigDecimal.class, BIG_DECIMAL);
+		BUILT_IN_TYPES.put(BigInteger.class, BIG_INTEGER);
+		BUILT_IN_TYPES.put(Character.class, CHARACTER);
+	}
+
+	private static final class Registration<T> {
+		final int typeId;
+		final int version;
+		final Class<T> type;
+		final BinaryCodec<T> codec;
+
+		Registration(int typeId, int version, Class<T> type,
+				BinaryCodec<T> codec) {
+			this.typeId = typeId;
+			this.version = version;
+			this.type = type;
+			this.codec = codec;
+		}
+	}
+
+	private final ConcurrentMap<Class<?>, Registration<?>> registrationsByClass = new ConcurrentHashMap<Class<?>, Registration<?>>();
+	private final ConcurrentMap<Integer, Registration<?>> registrationsById = new ConcurrentHashMap<Integer, Registration<?>>();
+
+	/**
+	 * Register a class with a codec generated from its fields,at version 1.
+	 * 
+	 * @see #register(int, int, Class)
+	 */
+	public <T> void register(int typeId, Class<T> type) {
+		register(typeId, 1, type);
+	}
+
+	/**
+	 * Register a class with a codec generated from its fields.Bump the version
+	 * whenever the fields of the class change,values written with another
+	 * version are then read as misses.
+	 * 
+	 * @param typeId
+	 *            stable id of the class,at least {@value #MIN_USER_TYPE_ID}
+	 * @param version
+	 * @param type
+	 */
+	public <T> void register(int typeId, int version, Class<T> type) {
+		register(typeId, version, type, new ReflectiveBinaryCodec<T>(this,
+				type, version));
+	}
+
+	/**
+	 * Register a class with its own codec.
+	 * 
+	 * @param typeId
+	 *            stable id of the class,at least {@value #MIN_USER_TYPE_ID}
+	 * @param version
+	 *            current version of the codec's format,passed back to
+	 *            {@link BinaryCodec#read(BinaryInput, int)}
+	 * @param type
+	 * @param codec
+	 */
+	public <T> void register(int typeId, int version, Class<T> type,
+			BinaryCodec<T> codec) {
+		if (typeId < MIN_USER_TYPE_ID) {
+			throw new IllegalArgumentException("Type id " + typeId
+					+ " is reserved,use ids from " + MIN_USER_TYPE_ID);
+		}
+		Registration<T> registration = new Registration<T>(typeId, version,
+				type, codec);
+		Registration<?> existing = registrationsById.putIfAbsent(typeId,
+				registration);
+		if (existing != null && existing.type != type) {
+			throw new IllegalArgumentException("Type id " + typeId
+					+ " is already registered for " + existing.type.getName());
+		}
+		registrationsById.put(typeId, registration);
+		registrationsByClass.put(type, registration);
+	}
+
+	/**
+	 * Set the registrations from a map of type id to class,convenient for
+	 * spring configuration.
+	 * 
+	 * @param types
+	 */
+	public void setTypes(Map<Integer, Class<?>> types) {
+		for (Map.Entry<Integer, Class<?>> entry : types.entrySet()) {
+			register(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Whether values of the declared type carry enough information to be read
+	 * back without knowing the type.
+	 */
+	boolean isSelfDescribing(Class<?> type) {
+		return type == Object.class || BUILT_IN_TYPES.containsKey(type)
+				|| registrationsByClass.containsKey(type);
+	}
+
+	@Override
+	public CachedData encode(Object o) {
+		BinaryOutput out = new BinaryOutput(256);
+		out.writeByte(MAGIC);
+		out.writeByte(FORMAT_VERSION);
+		writeObject(out, o);
+		return new CachedData(0, out.toByteArray());
+	}
+
+	@Override
+	public Object decode(CachedData d) {
+		Object obj = d.decodedObject;
+		if (obj != null) {
+			return obj;
+		}
+		try {
+			byte[] data = d.getData();
+			if ((d.getFlag() & FastJsonTranscoder.COMPRESSED) != 0) {
+				// large values written by FastJsonTranscoder
+				data = Compressor.decompress(data);
+			}
+			if (data.length == 0 || (data[0] & 0xFF) != MAGIC) {
+				obj = JSON.parse(data, new Feature[0]);
+			} else {
+				BinaryInput in = new BinaryInput(data, 1, data.length - 1);
+				int formatVersion = in.readByte();
+				if (formatVersion != FORMAT_VERSION) {
+					throw new IllegalArgumentException(
+							"Unknown binary format version " + formatVersion);
+				}
+				obj = readObject(in);
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Discard undecodable value", e);
+			return null;
+		}
+		d.decodedObject = obj;
+		return obj;
+	}
+
+	/**
+	 * Write a value preceded by its type id.
+	 * 
+	 * @param out
+	 * @param value
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void writeObject(BinaryOutput out, Object value) {
+		if (value == null) {
+			out.writeVarInt(NULL);
+			return;
+		}
+		Class<?> type = value.getClass();
+		Registration registration = registrationsByClass.get(type);
+		if (registration != null) {
+			out.writeVarInt(registration.typeId);
+			out.writeVarInt(registration.version);
+			registration.codec.write(out, value);
+			return;
+		}
+
+		Integer builtInType = BUILT_IN_TYPES.get(type);
+		if (builtInType != null) {
+			writeBuiltIn(out, builtInType, value);
+		} else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeVarInt(MAP);
+			out.writeVarInt(map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeObject(out, entry.getKey());
+				writeObject(out, entry.getValue());
+			}
+		} else if (value instanceof Collection) {
+			Collection<?> collection = (Collection<?>) value;
+			out.writeVarInt(value instanceof Set ? SET : LIST);
+			out.writeVarInt(collection.size());
+			for (Object element : collection) {
+				writeObject(out, element);
+			}
+		} else {
+			out.writeVarInt(JSON_VALUE);
+			writeJson(out, value);
+		}
+	}
+
+	private void writeBuiltIn(BinaryOutput out, int typeId, Object value) {
+		out.writeVarInt(typeId);
+		switch (typeId) {
+		case STRING:
+			out.writeString((String) value);
+			break;
+		case INTEGER:
+			out.writeSignedVarInt((Integer) value);
+			break;
+		case LONG:
+			out.writeSignedVarLong((Long) value);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) value);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) value);
+			break;
+		case BOOLEAN:
+			out.writeBoolean((Boolean) value);
+			break;
+		case BYTES:
+			out.writeByteArray((byte[]) value);
+			break;
+		case DATE:
+			out.writeSignedVarLong(((Date) value).getTime());
+			break;
+		case SHORT:
+			out.writeSignedVarInt((Short) value);
+			break;
+		case BYTE:
+			out.writeByte((Byte) value);
+			break;
+		case BIG_DECIMAL:
+			out.writeString(((BigDecimal) value).toString());
+			break;
+		case BIG_INTEGER:
+			out.writeByteArray(((BigInteger) value).toByteArray());
+			break;
+		case CHARACTER:
+			out.writeVarInt((Character) value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown type id " + typeId);
+		}
+	}
+
+	/**
+	 * Read a value written by {@link #writeObject(BinaryOutput, Object)}.
+	 * 
+	 * @param in
+	 * @return
+	 */
+	public Object readObject(BinaryInput in) {
+		int typeId = in.readVarInt();
+		if (typeId >= MIN_USER_TYPE_ID) {
+			Registration<?> registration = registrationsById.get(typeId);
+			if (registration == null) {
+				throw new IllegalArgumentException("Unknown type id " + typeId);
+			}
+			int version = in.readVarInt();
+			return registration.codec.read(in, version);
+		}
+
+		switch (typeId) {
+		case NULL:
+			return null;
+		case JSON_VALUE:
+			return JSON.parse(in.readByteArray(), new Feature[0]);
+		case STRING:
+			return in.readString();
+		case INTEGER:
+			return in.readSignedVarInt();
+		case LONG:
+			return in.readSignedVarLong();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTES:
+			return in.readByteArray();
+		case DATE:
+			return new Date(in.readSignedVarLong());
+		case SHORT:
+			return (short) in.readSignedVarInt();
+		case BYTE:
+			return (byte) in.readByte();
+		case BIG_DECIMAL:
+			return new BigDecimal(in.readString());
+		case BIG_INTEGER:
+			return new BigInteger(in.readByteArray());
+		case CHARACTER:
+			return (char) in.readVarInt();
+		case LIST: {
+			int size = in.readVarInt();
+			List<Object> list = new ArrayList<Object>(Math.min(size,
+					in.remaining()));
+			for (int i = 0; i < size; i++) {
+				list.add(readObject(in));
+			}
+			return list;
+		}
+		case SET: {
+			int size = in.readVarInt();
+			Set<Object> set = new LinkedHashSet<Object>();
+			for (int i = 0; i < size; i++) {
+				set.add(readObject(in));
+			}
+			return set;
+		}
+		case MAP: {
+			int size = in.readVarInt();
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for (int i = 0; i < size; i++) {
+				Object key = readObject(in);
+				map.put(key, readObject(in));
+			}
+			return map;
+		}
+		default:
+			throw new IllegalArgumentException("Unknown type id " + typeId);
+		}
+	}
+
+	/**
+	 * Write a value as length prefixed JSON.
+	 */
+	void writeJson(BinaryOutput out, Object value) {
+		out.writeByteArray(JSON.toJSONBytes(value));
+	}
+
+	/**
+	 * Read a value written by {@link #writeJson(BinaryOutput, Object)} as the
+	 * given type.
+	 */
+	Object readJson(BinaryInput in, Type type) {
+		return JSON.parseObject(in.readByteArray(), type);
+	}
+
+	@Override
+	public void setPrimitiveAsString(boolean primitiveAsString) {
+	}
+
+	@Override
+	public void setPackZeros(boolean packZeros) {
+	}
+
+	@Override
+	public boolean isPrimitiveAsString() {
+		return false;
+	}
+
+	@Override
+	public boolean isPackZeros() {
+		return false;
+	}
+
+	@Override
+	public void setCompressionThreshold(int to) {
+	}
+
+	@Override
+	public void setCompressionMode(CompressionMode compressMode) {
+	}
+}
@@ -0,0 +1,49 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import net.rubyeye.xmemcached.transcoders.CachedData;
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+import net.rubyeye.xmemcached.transcoders.Transcoder;
+
+/**
+ * Pass-through transcoder,it hands out the raw CachedData read from memcached
+ * and stores already encoded CachedData as it is.
+ */
+public class CachedDataTranscoder implements Transcoder<CachedData> {
+	public static final CachedDataTranscoder INSTANCE = new CachedDataTranscoder();
+
+	@Override
+	public CachedData encode(CachedData o) {
+		return o;
+	}
+
+	@Override
+	public CachedData decode(CachedData d) {
+		return d;
+	}
+
+	@Override
+	public void setPrimitiveAsString(boolean primitiveAsString) {
+	}
+
+	@Override
+	public void setPackZeros(boolean packZeros) {
+	}
+
+	@Override
+	public boolean isPrimitiveAsString() {
+		return false;
+	}
+
+	@Override
+	public boolean isPackZeros() {
+		return false;
+	}
+
+	@Override
+	public void setCompressionThreshold(int to) {
+	}
+
+	@Override
+	public void setCompressionMode(CompressionMode compressMode) {
+	}
+}
@@ -0,0 +1,139 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import net.rubyeye.xmemcached.transcoders.CompressionMode;
+
+/**
+ * JDK based compression of cached values.{@link CompressionMode#ZIP} uses a
+ * per thread zlib deflater at the fastest level,{@link CompressionMode#GZIP}
+ * the gzip stream format.Decompression recognizes both formats by their
+ * header,so the mode can be changed without flushing the cache.
+ */
+final class Compressor {
+	private static final ThreadLocal<Deflater> deflaterLocal = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> inflaterLocal = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	private static final ThreadLocal<byte[]> bufferLocal = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	private Compressor() {
+	}
+
+	/**
+	 * Compress the bytes,returns null if the result would not be smaller.
+	 */
+	static byte[] compress(CompressionMode mode, byte[] data, int offset,
+			int length) {
+		byte[] compressed = mode == CompressionMode.GZIP ? gzip(data, offset,
+				length) : deflate(data, offset, length);
+		return compressed != null && compressed.length < length ? compressed
+				: null;
+	}
+
+	private static byte[] deflate(byte[] data, int offset, int length) {
+		Deflater deflater = deflaterLocal.get();
+		byte[] buffer = bufferLocal.get();
+		try {
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2);
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				out.write(buffer, 0, count);
+				if (out.size() >= length) {
+					return null;
+				}
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	private static byte[] gzip(byte[] data, int offset, int length) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2);
+		try {
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(data, offset, length);
+			gzip.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+
+	static byte[] decompress(byte[] data) {
+		if (data.length > 1 && (data[0] & 0xFF) == 0x1F
+				&& (data[1] & 0xFF) == 0x8B) {
+			return gunzip(data);
+		}
+		return inflate(data);
+	}
+
+	private static byte[] inflate(byte[] data) {
+		Inflater inflater = inflaterLocal.get();
+		byte[] result = new byte[Math.max(data.length * 4, 64)];
+		int count = 0;
+		try {
+			inflater.setInput(data);
+			while (!inflater.finished()) {
+				if (count == result.length) {
+					result = Arrays.copyOf(result, result.length << 1);
+				}
+				int n = inflater.inflate(result, count, result.length - count);
+				if (n == 0
+						&& (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalArgumentException("Truncated zlib data");
+				}
+				count += n;
+			}
+			return count == result.length ? result : Arrays.copyOf(result,
+					count);
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException(e);
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	private static byte[] gunzip(byte[] data) {
+		byte[] buffer = bufferLocal.get();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+		try {
+			GZIPInputStream gzip = new GZIPInputStream(
+					new ByteArrayInputStream(data));
+			int count;
+			while ((count = gzip.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			gzip.close();
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return out.toByteArray();
+	}
+}
@@ -1,22 +1,135 @@
 package com.kaisen.common.xmemcached.transcoders;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
 
 import net.rubyeye.xmemcached.transcoders.CachedData;
 import net.rubyeye.xmemcached.transcoders.CompressionMode;
 import net.rubyeye.xmemcached.transcoders.Transcoder;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.parser.DefaultJSONParser;
 import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.parser.JSONToken;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.ObjectDeserializer;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.util.IOUtils;
+import com.alibaba.fastjson.util.ThreadLocalCache;
 
 public class FastJsonTranscoder implements Transcoder<Object> {
+	/** Flag of values stored compressed,the same bit xmemcached uses */
+	public static final int COMPRESSED = 2;
+
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 16384;
+
+	private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	private CompressionMode compressionMode = CompressionMode.ZIP;
+
+	private int maxSize = CachedData.MAX_SIZE;
+
+	private final Type type;
+
+	private final ObjectDeserializer deserializer;
+
+	/**
+	 * Create a transcoder decoding values to generic JSON objects and arrays.
+	 */
+	public FastJsonTranscoder() {
+		this.type = null;
+		this.deserializer = null;
+	}
+
+	/**
+	 * Create a transcoder decoding values straight into the given type.
+	 * 
+	 * @param type
+	 *            class or generic type of the values
+	 */
+	public FastJsonTranscoder(Type type) {
+		this.type = type;
+		this.deserializer = type == byte[].class || type == char[].class ? null
+				: ParserConfig.getGlobalInstance().getDeserializer(type);
+	}
+
+	/**
+	 * Create a transcoder decoding values straight into the type of the
+	 * reference,e.g. <code>new TypeReference&lt;List&lt;User&gt;&gt;(){}</code>.
+	 * 
+	 * @param typeReference
+	 */
+	public FastJsonTranscoder(TypeReference<?> typeReference) {
+		this(typeReference.getType());
+	}
+
+	/**
+	 * Returns a transcoder with the same compression and size settings as this
+	 * one,decoding values into the given type.
+	 * 
+	 * @param type
+	 * @return
+	 */
+	public FastJsonTranscoder forType(Type type) {
+		FastJsonTranscoder transcoder = new FastJsonTranscoder(type);
+		transcoder.compressionThreshold = compressionThreshold;
+		transcoder.compressionMode = compressionMode;
+		transcoder.maxSize = maxSize;
+		return transcoder;
+	}
+
+	/**
+	 * Returns the type values are decoded into,or null if they are decoded to
+	 * generic JSON objects.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Serialize the value straight to UTF-8 in a per thread buffer,the only
+	 * allocation left is the stored byte array sized to the payload.
+	 */
 	@Override
 	public CachedData encode(Object o) {
-		CachedData cachedData = new CachedData();
-		cachedData.setCapacity(CachedData.MAX_SIZE);
-		cachedData.setData(JSON.toJSONString(o)
-				.getBytes(StandardCharsets.UTF_8));
-		return cachedData;
+		Utf8Writer writer = Utf8Writer.get();
+		SerializeWriter out = new SerializeWriter();
+		try {
+			new JSONSerializer(out).write(o);
+			out.writeTo(writer);
+			writer.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			out.close();
+		}
+
+		int length = writer.size();
+		int flag = 0;
+		byte[] data = null;
+		if (length > compressionThreshold) {
+			data = Compressor.compress(compressionMode, writer.buffer(), 0,
+					length);
+			if (data != null) {
+				flag = COMPRESSED;
+			}
+		}
+		if (data == null) {
+			data = Arrays.copyOf(writer.buffer(), length);
+		}
+		writer.release();
+		if (data.length > maxSize) {
+			throw new IllegalArgumentException("Cannot cache data larger than "
+					+ maxSize + " bytes (you tried to cache a " + data.length
+					+ " byte object)");
+		}
+		return new CachedData(flag, data, data.length, -1);
 	}
 
 	@Override
@@ -26,11 +139,44 @@ public class FastJsonTranscoder implements Transcoder<Object> {
 			return obj;
 		}
 		byte[] data = d.getData();
-		obj = JSON.parse(data, new Feature[0]);
+		if ((d.getFlag() & COMPRESSED) != 0) {
+			data = Compressor.decompress(data);
+		}
+		obj = type == null ? JSON.parse(data, new Feature[0]) : parse(data);
 		d.decodedObject = obj;
 		return obj;
 	}
 
+	/**
+	 * Decode the UTF-8 text in the per thread char buffer of fastjson and run
+	 * the deserializer resolved for the type,without building an
+	 * intermediate JSON tree.
+	 */
+	private Object parse(byte[] data) {
+		CharsetDecoder decoder = ThreadLocalCache.getUTF8Decoder();
+		decoder.reset();
+		int capacity = (int) (data.length * (double) decoder.maxCharsPerByte());
+		char[] chars = ThreadLocalCache.getChars(capacity);
+		CharBuffer charBuffer = CharBuffer.wrap(chars);
+		IOUtils.decode(decoder, ByteBuffer.wrap(data), charBuffer);
+
+		DefaultJSONParser parser = new DefaultJSONParser(chars,
+				charBuffer.position(), ParserConfig.getGlobalInstance(),
+				JSON.DEFAULT_PARSER_FEATURE);
+		Object value;
+		if (deserializer == null) {
+			value = parser.parseObject(type);
+		} else if (parser.getLexer().token() == JSONToken.NULL) {
+			parser.getLexer().nextToken();
+			value = null;
+		} else {
+			value = deserializer.deserialze(parser, type, null);
+		}
+		parser.handleResovleTask(value);
+		parser.close();
+		return value;
+	}
+
 	@Override
 	public void setPrimitiveAsString(boolean primitiveAsString) {
 	}
@@ -49,11 +195,30 @@ public class FastJsonTranscoder implements Transcoder<Object> {
 		return false;
 	}
 
+	/**
+	 * Values whose JSON text is larger than the threshold,in bytes,are stored
+	 * compressed.The default is 16384.
+	 */
 	@Override
 	public void setCompressionThreshold(int to) {
+		this.compressionThreshold = to;
 	}
 
+	/**
+	 * Set the compression format,the default is {@link CompressionMode#ZIP}.
+	 * Values are decompressed whatever format they were written with.
+	 */
 	@Override
 	public void setCompressionMode(CompressionMode compressMode) {
+		this.compressionMode = compressMode;
+	}
+
+	/**
+	 * Values larger than this once encoded,in bytes,are rejected.The default
+	 * is {@link CachedData#MAX_SIZE},raise it only when larger values are
+	 * split before they are stored.
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
 	}
 }
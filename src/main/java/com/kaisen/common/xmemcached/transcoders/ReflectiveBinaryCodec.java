@@ -0,0 +1,200 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Codec built from the fields of a class.Non static,non transient fields of
+ * the class and its super classes are written in the order of their names,
+ * primitives without any type information,strings,boxed numbers,dates and
+ * registered classes through
+ * {@link BinaryTranscoder#writeObject(BinaryOutput, Object)},and anything
+ * else as JSON decoded with the declared generic type of the field.Register
+ * the classes of nested fields before the classes containing them.
+ *
+ * The layout has no field tags,so values written with a different version of
+ * the class can't be read.Register the class with a new version whenever its
+ * fields change,the old items are then treated as misses.
+ */
+class ReflectiveBinaryCodec<T> implements BinaryCodec<T> {
+	private static final int VALUE = 0;
+	private static final int JSON = 9;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int SHORT = 3;
+	private static final int BYTE = 4;
+	private static final int CHAR = 5;
+	private static final int BOOLEAN = 6;
+	private static final int FLOAT = 7;
+	private static final int DOUBLE = 8;
+
+	private final BinaryTranscoder transcoder;
+	private final int version;
+	private final Constructor<T> constructor;
+	private final Field[] fields;
+	private final int[] kinds;
+	private final Type[] types;
+
+	ReflectiveBinaryCodec(BinaryTranscoder transcoder, Class<T> type,
+			int version) {
+		this.transcoder = transcoder;
+		this.version = version;
+		try {
+			this.constructor = type.getDeclaredConstructor();
+			this.constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(type.getName()
+					+ " has no default constructor", e);
+		}
+
+		List<Field> fieldList = new ArrayList<Field>();
+		for (Class<?> c = type; c != null && c != Object.class; c = c
+				.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers)
+						|| Modifier.isTransient(modifiers)) {
+					continue;
+				}
+				field.setAccessible(true);
+				fieldList.add(field);
+			}
+		}
+		Collections.sort(fieldList, new Comparator<Field>() {
+			@Override
+			public int compare(Field f1, Field f2) {
+				int result = f1.getName().compareTo(f2.getName());
+				return result != 0 ? result : f1.getDeclaringClass()
+						.getName().compareTo(f2.getDeclaringClass().getName());
+			}
+		});
+		this.fields = fieldList.toArray(new Field[fieldList.size()]);
+		this.kinds = new int[fields.length];
+		this.types = new Type[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			kinds[i] = kindOf(fields[i].getType());
+			types[i] = fields[i].getGenericType();
+		}
+	}
+
+	private int kindOf(Class<?> type) {
+		if (type == int.class) {
+			return INT;
+		} else if (type == long.class) {
+			return LONG;
+		} else if (type == short.class) {
+			return SHORT;
+		} else if (type == byte.class) {
+			return BYTE;
+		} else if (type == char.class) {
+			return CHAR;
+		} else if (type == boolean.class) {
+			return BOOLEAN;
+		} else if (type == float.class) {
+			return FLOAT;
+		} else if (type == double.class) {
+			return DOUBLE;
+		} else if (transcoder.isSelfDescribing(type)) {
+			return VALUE;
+		}
+		// collections,arrays and unregistered classes keep their declared
+		// generic type through JSON
+		return JSON;
+	}
+
+	@Override
+	public void write(BinaryOutput out, T value) {
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				Field field = fields[i];
+				switch (kinds[i]) {
+				case INT:
+					out.writeSignedVarInt(field.getInt(value));
+					break;
+				case LONG:
+					out.writeSignedVarLong(field.getLong(value));
+					break;
+				case SHORT:
+					out.writeSignedVarInt(field.getShort(value));
+					break;
+				case BYTE:
+					out.writeByte(field.getByte(value));
+					break;
+				case CHAR:
+					out.writeVarInt(field.getChar(value));
+					break;
+				case BOOLEAN:
+					out.writeBoolean(field.getBoolean(value));
+					break;
+				case FLOAT:
+					out.writeFloat(field.getFloat(value));
+					break;
+				case DOUBLE:
+					out.writeDouble(field.getDouble(value));
+					break;
+				case JSON:
+					transcoder.writeJson(out, field.get(value));
+					break;
+				default:
+					transcoder.writeObject(out, field.get(value));
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public T read(BinaryInput in, int version) {
+		if (version != this.version) {
+			throw new IllegalArgumentException("Value written with version "
+					+ version + " but the current version is " + this.version);
+		}
+		try {
+			T value = constructor.newInstance();
+			for (int i = 0; i < fields.length; i++) {
+				Field field = fields[i];
+				switch (kinds[i]) {
+				case INT:
+					field.setInt(value, in.readSignedVarInt());
+					break;
+				case LONG:
+					field.setLong(value, in.readSignedVarLong());
+					break;
+				case SHORT:
+					field.setShort(value, (short) in.readSignedVarInt());
+					break;
+				case BYTE:
+					field.setByte(value, (byte) in.readByte());
+					break;
+				case CHAR:
+					field.setChar(value, (char) in.readVarInt());
+					break;
+				case BOOLEAN:
+					field.setBoolean(value, in.readBoolean());
+					break;
+				case FLOAT:
+					field.setFloat(value, in.readFloat());
+					break;
+				case DOUBLE:
+					field.setDouble(value, in.readDouble());
+					break;
+				case JSON:
+					field.set(value, transcoder.readJson(in, types[i]));
+					break;
+				default:
+					field.set(value, transcoder.readObject(in));
+				}
+			}
+			return value;
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
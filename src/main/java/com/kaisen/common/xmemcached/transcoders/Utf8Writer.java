@@ -0,0 +1,124 @@
+package com.kaisen.common.xmemcached.transcoders;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writer encoding characters straight into a reusable UTF-8 byte buffer.One
+ * instance is kept per thread,buffers grown beyond
+ * {@value #MAX_RETAINED_CAPACITY} bytes are released by {@link #release()}
+ * once their content is copied,or by the next use after a failed encode,so
+ * that one huge value does not pin memory for the life of the thread.
+ */
+final class Utf8Writer extends Writer {
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+	private static final ThreadLocal<Utf8Writer> writerLocal = new ThreadLocal<Utf8Writer>() {
+		@Override
+		protected Utf8Writer initialValue() {
+			return new Utf8Writer();
+		}
+	};
+
+	private byte[] buf = new byte[INITIAL_CAPACITY];
+	private int count;
+	private char highSurrogate;
+
+	/**
+	 * Returns the empty writer of the current thread.
+	 */
+	static Utf8Writer get() {
+		Utf8Writer writer = writerLocal.get();
+		writer.reset();
+		return writer;
+	}
+
+	private void reset() {
+		release();
+		count = 0;
+		highSurrogate = 0;
+	}
+
+	/**
+	 * Drop the buffer if it grew beyond {@value #MAX_RETAINED_CAPACITY}
+	 * bytes.Its content is lost,copy it first.
+	 */
+	void release() {
+		if (buf.length > MAX_RETAINED_CAPACITY) {
+			buf = new byte[INITIAL_CAPACITY];
+			count = 0;
+		}
+	}
+
+	private void ensureCapacity(int extra) {
+		int required = count + extra;
+		if (required > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, required));
+		}
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) {
+		// each char takes at most three bytes,a surrogate pair four
+		ensureCapacity(length * 3 + 1);
+		byte[] buf = this.buf;
+		int count = this.count;
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			char c = chars[i];
+			if (highSurrogate != 0) {
+				char high = highSurrogate;
+				highSurrogate = 0;
+				if (Character.isLowSurrogate(c)) {
+					int codePoint = Character.toCodePoint(high, c);
+					buf[count++] = (byte) (0xF0 | (codePoint >> 18));
+					buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					buf[count++] = (byte) (0x80 | (codePoint & 0x3F));
+					continue;
+				}
+				buf[count++] = '?';
+			}
+			if (c < 0x80) {
+				buf[count++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[count++] = (byte) (0xC0 | (c >> 6));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c)) {
+				highSurrogate = c;
+			} else if (Character.isLowSurrogate(c)) {
+				buf[count++] = '?';
+			} else {
+				buf[count++] = (byte) (0xE0 | (c >> 12));
+				buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		this.count = count;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+		if (highSurrogate != 0) {
+			ensureCapacity(1);
+			buf[count++] = '?';
+			highSurrogate = 0;
+		}
+	}
+
+	/**
+	 * The internal buffer,valid up to {@link #size()}.
+	 */
+	byte[] buffer() {
+		return buf;
+	}
+
+	int size() {
+		return count;
+	}
+}
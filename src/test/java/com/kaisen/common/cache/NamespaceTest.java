@@ -0,0 +1,133 @@
+package com.kaisen.common.cache;
+
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+import net.rubyeye.xmemcached.MemcachedClient;
+import net.rubyeye.xmemcached.MemcachedClientCallable;
+import net.rubyeye.xmemcached.XMemcachedClientBuilder;
+import net.rubyeye.xmemcached.exception.MemcachedException;
+
+import com.kaisen.common.cache.embedded.EmbeddedMemcachedServer;
+import com.kaisen.common.xmemcached.transcoders.FastJsonTranscoder;
+
+/**
+ * Namespaces of {@link BaseCache} against an {@link EmbeddedMemcachedServer}
+ * and a client storing JSON,which creates namespace versions in quotes.
+ */
+public class NamespaceTest extends TestCase {
+	private EmbeddedMemcachedServer server;
+	private MemcachedClient client;
+	private TestCache cache;
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new EmbeddedMemcachedServer();
+		server.start();
+		XMemcachedClientBuilder builder = new XMemcachedClientBuilder(
+				server.getAddress().getHostString() + ":" + server.getPort());
+		builder.setTranscoder(new FastJsonTranscoder());
+		client = builder.build();
+		cache = new TestCache(client);
+		cache.initialize();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		cache.shutdown();
+		client.shutdown();
+		server.stop();
+	}
+
+	public void testKeysCompatibleWithClientNamespace() throws Exception {
+		client.withNamespace("u1", new MemcachedClientCallable<Void>() {
+			public Void call(MemcachedClient client) throws MemcachedException,
+					InterruptedException, TimeoutException {
+				client.set(cache.buildKey("k"), 0, "in namespace");
+				return null;
+			}
+		});
+		cache.beginWithNamespace("u1");
+		try {
+			assertEquals("in namespace", cache.get("k"));
+		} finally {
+			cache.endWithNamespace();
+		}
+
+		cache.beginWithNamespace("u1");
+		try {
+			cache.set("k2", "from cache");
+		} finally {
+			cache.endWithNamespace();
+		}
+		assertEquals("from cache", cache.withNamespace("u1",
+				new MemcachedClientCallable<String>() {
+					public String call(MemcachedClient client)
+							throws MemcachedException, InterruptedException,
+							TimeoutException {
+						return client.get(cache.buildKey("k2"));
+					}
+				}));
+	}
+
+	public void testInvalidateNamespaceCreatedByClient() throws Exception {
+		client.withNamespace("u2", new MemcachedClientCallable<Void>() {
+			public Void call(MemcachedClient client) throws MemcachedException,
+					InterruptedException, TimeoutException {
+				client.set(cache.buildKey("k"), 0, "old");
+				return null;
+			}
+		});
+		cache.invalidateNamespace("u2");
+		cache.beginWithNamespace("u2");
+		try {
+			assertNull(cache.get("k"));
+			cache.set("k", "new");
+		} finally {
+			cache.endWithNamespace();
+		}
+		cache.invalidateNamespace("u2");
+		cache.beginWithNamespace("u2");
+		try {
+			assertNull(cache.get("k"));
+		} finally {
+			cache.endWithNamespace();
+		}
+	}
+
+	public void testInvalidateMissingNamespace() throws Exception {
+		cache.beginWithNamespace("u3");
+		try {
+			cache.set("k", "v");
+			assertEquals("v", cache.get("k"));
+		} finally {
+			cache.endWithNamespace();
+		}
+		cache.invalidateNamespace("u3");
+		cache.invalidateNamespace("u3");
+		cache.beginWithNamespace("u3");
+		try {
+			assertNull(cache.get("k"));
+		} finally {
+			cache.endWithNamespace();
+		}
+	}
+
+	private static class TestCache extends BaseCache<String> {
+		private final MemcachedClient client;
+
+		TestCache(MemcachedClient client) {
+			this.client = client;
+		}
+
+		@Override
+		protected MemcachedClient getMemcachedClient() {
+			return client;
+		}
+
+		@Override
+		protected int getExpirationTime() {
+			return 60;
+		}
+	}
+}